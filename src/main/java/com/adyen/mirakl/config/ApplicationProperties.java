@@ -42,6 +42,8 @@ public class ApplicationProperties {
     private String removeSentEmailsCron;
     private String payoutRetryCron;
     private String retryDocsCron;
+    private String notificationRecoveryCron;
+    private String removeNotificationDedupeKeysCron;
     private Integer initialDeltaDaysBack;
     private Integer maxPayoutFailed;
     private Integer maxDocRetries;
@@ -49,6 +51,36 @@ public class ApplicationProperties {
     private String basicUsername;
     private String basicPassword;
     private Integer defaultProcessingTier;
+    private Integer shopSyncThreads;
+    private Integer accountLookupThreads;
+    private Integer accountHolderCacheMaxEntries;
+    private Integer accountHolderCacheTimeToLiveSeconds;
+    private Integer miraklShopCacheMaxEntries;
+    private Integer miraklShopCacheTimeToLiveSeconds;
+    private Integer miraklShopBatchSize;
+    private Integer miraklShopBatchWaitMillis;
+    private Integer documentPipelineThreads;
+    private Integer documentDownloadBatchSize;
+    private Integer adyenNotificationBatchSize;
+    private Integer adyenNotificationBatchWaitMillis;
+    private Integer accountHolderNotificationThreads;
+    private Integer accountHolderNotificationQueueCapacity;
+    private Integer verificationNotificationThreads;
+    private Integer verificationNotificationQueueCapacity;
+    private Integer fundsNotificationThreads;
+    private Integer fundsNotificationQueueCapacity;
+    private Integer notificationRecoveryPageSize;
+    private Integer notificationRecoveryMaxAttempts;
+    private Integer notificationRecoveryMinAgeSeconds;
+    private Double notificationRecoveryPerSecond;
+    private Integer notificationDispatchLeaseSeconds;
+    private Integer notificationDedupeCacheSize;
+    private Integer notificationDedupeRetentionDays;
+    private Integer manualAccountingDocumentBatchSize;
+    private Integer voucherEntryBatchSize;
+    private Integer payoutThreads;
+    private Integer payoutLeaseMinutes;
+    private Integer payoutChunkSize;
 
     @Bean
     public Map<String, Pattern> houseNumberPatterns() {
@@ -145,6 +177,22 @@ public class ApplicationProperties {
         this.retryDocsCron = retryDocsCron;
     }
 
+    public String getNotificationRecoveryCron() {
+        return notificationRecoveryCron;
+    }
+
+    public void setNotificationRecoveryCron(final String notificationRecoveryCron) {
+        this.notificationRecoveryCron = notificationRecoveryCron;
+    }
+
+    public String getRemoveNotificationDedupeKeysCron() {
+        return removeNotificationDedupeKeysCron;
+    }
+
+    public void setRemoveNotificationDedupeKeysCron(final String removeNotificationDedupeKeysCron) {
+        this.removeNotificationDedupeKeysCron = removeNotificationDedupeKeysCron;
+    }
+
     public Integer getDefaultProcessingTier() {
         return defaultProcessingTier;
     }
@@ -152,4 +200,244 @@ public class ApplicationProperties {
     public void setDefaultProcessingTier(final Integer defaultProcessingTier) {
         this.defaultProcessingTier = defaultProcessingTier;
     }
+
+    public Integer getShopSyncThreads() {
+        return shopSyncThreads;
+    }
+
+    public void setShopSyncThreads(final Integer shopSyncThreads) {
+        this.shopSyncThreads = shopSyncThreads;
+    }
+
+    public Integer getAccountLookupThreads() {
+        return accountLookupThreads;
+    }
+
+    public void setAccountLookupThreads(final Integer accountLookupThreads) {
+        this.accountLookupThreads = accountLookupThreads;
+    }
+
+    public Integer getAccountHolderCacheMaxEntries() {
+        return accountHolderCacheMaxEntries;
+    }
+
+    public void setAccountHolderCacheMaxEntries(final Integer accountHolderCacheMaxEntries) {
+        this.accountHolderCacheMaxEntries = accountHolderCacheMaxEntries;
+    }
+
+    public Integer getAccountHolderCacheTimeToLiveSeconds() {
+        return accountHolderCacheTimeToLiveSeconds;
+    }
+
+    public void setAccountHolderCacheTimeToLiveSeconds(final Integer accountHolderCacheTimeToLiveSeconds) {
+        this.accountHolderCacheTimeToLiveSeconds = accountHolderCacheTimeToLiveSeconds;
+    }
+
+    public Integer getMiraklShopCacheMaxEntries() {
+        return miraklShopCacheMaxEntries;
+    }
+
+    public void setMiraklShopCacheMaxEntries(final Integer miraklShopCacheMaxEntries) {
+        this.miraklShopCacheMaxEntries = miraklShopCacheMaxEntries;
+    }
+
+    public Integer getMiraklShopCacheTimeToLiveSeconds() {
+        return miraklShopCacheTimeToLiveSeconds;
+    }
+
+    public void setMiraklShopCacheTimeToLiveSeconds(final Integer miraklShopCacheTimeToLiveSeconds) {
+        this.miraklShopCacheTimeToLiveSeconds = miraklShopCacheTimeToLiveSeconds;
+    }
+
+    public Integer getMiraklShopBatchSize() {
+        return miraklShopBatchSize;
+    }
+
+    public void setMiraklShopBatchSize(final Integer miraklShopBatchSize) {
+        this.miraklShopBatchSize = miraklShopBatchSize;
+    }
+
+    public Integer getMiraklShopBatchWaitMillis() {
+        return miraklShopBatchWaitMillis;
+    }
+
+    public void setMiraklShopBatchWaitMillis(final Integer miraklShopBatchWaitMillis) {
+        this.miraklShopBatchWaitMillis = miraklShopBatchWaitMillis;
+    }
+
+    public Integer getDocumentPipelineThreads() {
+        return documentPipelineThreads;
+    }
+
+    public void setDocumentPipelineThreads(final Integer documentPipelineThreads) {
+        this.documentPipelineThreads = documentPipelineThreads;
+    }
+
+    public Integer getDocumentDownloadBatchSize() {
+        return documentDownloadBatchSize;
+    }
+
+    public void setDocumentDownloadBatchSize(final Integer documentDownloadBatchSize) {
+        this.documentDownloadBatchSize = documentDownloadBatchSize;
+    }
+
+    public Integer getAdyenNotificationBatchSize() {
+        return adyenNotificationBatchSize;
+    }
+
+    public void setAdyenNotificationBatchSize(final Integer adyenNotificationBatchSize) {
+        this.adyenNotificationBatchSize = adyenNotificationBatchSize;
+    }
+
+    public Integer getAdyenNotificationBatchWaitMillis() {
+        return adyenNotificationBatchWaitMillis;
+    }
+
+    public void setAdyenNotificationBatchWaitMillis(final Integer adyenNotificationBatchWaitMillis) {
+        this.adyenNotificationBatchWaitMillis = adyenNotificationBatchWaitMillis;
+    }
+
+    public Integer getAccountHolderNotificationThreads() {
+        return accountHolderNotificationThreads;
+    }
+
+    public void setAccountHolderNotificationThreads(final Integer accountHolderNotificationThreads) {
+        this.accountHolderNotificationThreads = accountHolderNotificationThreads;
+    }
+
+    public Integer getAccountHolderNotificationQueueCapacity() {
+        return accountHolderNotificationQueueCapacity;
+    }
+
+    public void setAccountHolderNotificationQueueCapacity(final Integer accountHolderNotificationQueueCapacity) {
+        this.accountHolderNotificationQueueCapacity = accountHolderNotificationQueueCapacity;
+    }
+
+    public Integer getVerificationNotificationThreads() {
+        return verificationNotificationThreads;
+    }
+
+    public void setVerificationNotificationThreads(final Integer verificationNotificationThreads) {
+        this.verificationNotificationThreads = verificationNotificationThreads;
+    }
+
+    public Integer getVerificationNotificationQueueCapacity() {
+        return verificationNotificationQueueCapacity;
+    }
+
+    public void setVerificationNotificationQueueCapacity(final Integer verificationNotificationQueueCapacity) {
+        this.verificationNotificationQueueCapacity = verificationNotificationQueueCapacity;
+    }
+
+    public Integer getFundsNotificationThreads() {
+        return fundsNotificationThreads;
+    }
+
+    public void setFundsNotificationThreads(final Integer fundsNotificationThreads) {
+        this.fundsNotificationThreads = fundsNotificationThreads;
+    }
+
+    public Integer getFundsNotificationQueueCapacity() {
+        return fundsNotificationQueueCapacity;
+    }
+
+    public void setFundsNotificationQueueCapacity(final Integer fundsNotificationQueueCapacity) {
+        this.fundsNotificationQueueCapacity = fundsNotificationQueueCapacity;
+    }
+
+    public Integer getNotificationRecoveryPageSize() {
+        return notificationRecoveryPageSize;
+    }
+
+    public void setNotificationRecoveryPageSize(final Integer notificationRecoveryPageSize) {
+        this.notificationRecoveryPageSize = notificationRecoveryPageSize;
+    }
+
+    public Integer getNotificationRecoveryMaxAttempts() {
+        return notificationRecoveryMaxAttempts;
+    }
+
+    public void setNotificationRecoveryMaxAttempts(final Integer notificationRecoveryMaxAttempts) {
+        this.notificationRecoveryMaxAttempts = notificationRecoveryMaxAttempts;
+    }
+
+    public Integer getNotificationRecoveryMinAgeSeconds() {
+        return notificationRecoveryMinAgeSeconds;
+    }
+
+    public void setNotificationRecoveryMinAgeSeconds(final Integer notificationRecoveryMinAgeSeconds) {
+        this.notificationRecoveryMinAgeSeconds = notificationRecoveryMinAgeSeconds;
+    }
+
+    public Double getNotificationRecoveryPerSecond() {
+        return notificationRecoveryPerSecond;
+    }
+
+    public void setNotificationRecoveryPerSecond(final Double notificationRecoveryPerSecond) {
+        this.notificationRecoveryPerSecond = notificationRecoveryPerSecond;
+    }
+
+    public Integer getNotificationDispatchLeaseSeconds() {
+        return notificationDispatchLeaseSeconds;
+    }
+
+    public void setNotificationDispatchLeaseSeconds(final Integer notificationDispatchLeaseSeconds) {
+        this.notificationDispatchLeaseSeconds = notificationDispatchLeaseSeconds;
+    }
+
+    public Integer getNotificationDedupeCacheSize() {
+        return notificationDedupeCacheSize;
+    }
+
+    public void setNotificationDedupeCacheSize(final Integer notificationDedupeCacheSize) {
+        this.notificationDedupeCacheSize = notificationDedupeCacheSize;
+    }
+
+    public Integer getNotificationDedupeRetentionDays() {
+        return notificationDedupeRetentionDays;
+    }
+
+    public void setNotificationDedupeRetentionDays(final Integer notificationDedupeRetentionDays) {
+        this.notificationDedupeRetentionDays = notificationDedupeRetentionDays;
+    }
+
+    public Integer getManualAccountingDocumentBatchSize() {
+        return manualAccountingDocumentBatchSize;
+    }
+
+    public void setManualAccountingDocumentBatchSize(final Integer manualAccountingDocumentBatchSize) {
+        this.manualAccountingDocumentBatchSize = manualAccountingDocumentBatchSize;
+    }
+
+    public Integer getVoucherEntryBatchSize() {
+        return voucherEntryBatchSize;
+    }
+
+    public void setVoucherEntryBatchSize(final Integer voucherEntryBatchSize) {
+        this.voucherEntryBatchSize = voucherEntryBatchSize;
+    }
+
+    public Integer getPayoutThreads() {
+        return payoutThreads;
+    }
+
+    public void setPayoutThreads(final Integer payoutThreads) {
+        this.payoutThreads = payoutThreads;
+    }
+
+    public Integer getPayoutLeaseMinutes() {
+        return payoutLeaseMinutes;
+    }
+
+    public void setPayoutLeaseMinutes(final Integer payoutLeaseMinutes) {
+        this.payoutLeaseMinutes = payoutLeaseMinutes;
+    }
+
+    public Integer getPayoutChunkSize() {
+        return payoutChunkSize;
+    }
+
+    public void setPayoutChunkSize(final Integer payoutChunkSize) {
+        this.payoutChunkSize = payoutChunkSize;
+    }
 }
@@ -22,6 +22,7 @@
 
 package com.adyen.mirakl.config;
 
+import com.adyen.mirakl.listeners.NotificationExecutors;
 import io.github.jhipster.async.ExceptionHandlingAsyncTaskExecutor;
 import io.github.jhipster.config.JHipsterProperties;
 
@@ -35,6 +36,7 @@ import org.springframework.scheduling.annotation.*;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableAsync
@@ -45,8 +47,11 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
     private final JHipsterProperties jHipsterProperties;
 
-    public AsyncConfiguration(JHipsterProperties jHipsterProperties) {
+    private final ApplicationProperties applicationProperties;
+
+    public AsyncConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
     }
 
     @Override
@@ -61,6 +66,106 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * Worker pool used by the shop sync to push shops to Adyen concurrently, once the queue is full the submitting thread processes the shop itself
+     */
+    @Bean(name = "shopSyncExecutor")
+    public ThreadPoolTaskExecutor shopSyncExecutor() {
+        log.debug("Creating Shop Sync Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getShopSyncThreads());
+        executor.setMaxPoolSize(applicationProperties.getShopSyncThreads());
+        executor.setQueueCapacity(jHipsterProperties.getAsync().getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("adyen-mirakl-connector-ShopSync-");
+        return executor;
+    }
+
+    /**
+     * Worker pool used to resolve account codes to their shop, kept apart from the shop sync so funds notifications never wait behind a sync
+     */
+    @Bean(name = "accountLookupExecutor")
+    public ThreadPoolTaskExecutor accountLookupExecutor() {
+        log.debug("Creating Account Lookup Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getAccountLookupThreads());
+        executor.setMaxPoolSize(applicationProperties.getAccountLookupThreads());
+        executor.setQueueCapacity(jHipsterProperties.getAsync().getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("adyen-mirakl-connector-AccountLookup-");
+        return executor;
+    }
+
+    /**
+     * Worker pool used to download documents from Mirakl and upload them to Adyen concurrently
+     */
+    @Bean(name = "documentPipelineExecutor")
+    public ThreadPoolTaskExecutor documentPipelineExecutor() {
+        log.debug("Creating Document Pipeline Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getDocumentPipelineThreads());
+        executor.setMaxPoolSize(applicationProperties.getDocumentPipelineThreads());
+        executor.setQueueCapacity(jHipsterProperties.getAsync().getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("adyen-mirakl-connector-Documents-");
+        return executor;
+    }
+
+    /**
+     * Worker pool used to pay out voucher entries concurrently, once the queue is full the submitting thread pays out the entries itself
+     */
+    @Bean(name = "payoutExecutor")
+    public ThreadPoolTaskExecutor payoutExecutor() {
+        log.debug("Creating Payout Task Executor");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(applicationProperties.getPayoutThreads());
+        executor.setMaxPoolSize(applicationProperties.getPayoutThreads());
+        executor.setQueueCapacity(jHipsterProperties.getAsync().getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("adyen-mirakl-connector-Payouts-");
+        return executor;
+    }
+
+    @Bean(name = "accountHolderNotificationExecutor")
+    public ThreadPoolTaskExecutor accountHolderNotificationExecutor() {
+        return notificationExecutor(applicationProperties.getAccountHolderNotificationThreads(),
+                                    applicationProperties.getAccountHolderNotificationQueueCapacity(),
+                                    "adyen-mirakl-connector-AccountHolderNotifications-");
+    }
+
+    @Bean(name = "verificationNotificationExecutor")
+    public ThreadPoolTaskExecutor verificationNotificationExecutor() {
+        return notificationExecutor(applicationProperties.getVerificationNotificationThreads(),
+                                    applicationProperties.getVerificationNotificationQueueCapacity(),
+                                    "adyen-mirakl-connector-VerificationNotifications-");
+    }
+
+    @Bean(name = "fundsNotificationExecutor")
+    public ThreadPoolTaskExecutor fundsNotificationExecutor() {
+        return notificationExecutor(applicationProperties.getFundsNotificationThreads(),
+                                    applicationProperties.getFundsNotificationQueueCapacity(),
+                                    "adyen-mirakl-connector-FundsNotifications-");
+    }
+
+    @Bean
+    public NotificationExecutors notificationExecutors() {
+        return new NotificationExecutors(accountHolderNotificationExecutor(), verificationNotificationExecutor(), fundsNotificationExecutor());
+    }
+
+    /**
+     * Notification pools reject work once their queue is full, the notification then stays stored in the database to be retried later
+     */
+    private ThreadPoolTaskExecutor notificationExecutor(int threads, int queueCapacity, String threadNamePrefix) {
+        log.debug("Creating Notification Task Executor {}", threadNamePrefix);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
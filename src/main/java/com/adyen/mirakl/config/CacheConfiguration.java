@@ -22,6 +22,8 @@
 
 package com.adyen.mirakl.config;
 
+import com.adyen.mirakl.service.AccountHolderService;
+import com.adyen.mirakl.service.MiraklShopService;
 import io.github.jhipster.config.JHipsterProperties;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
@@ -44,14 +46,26 @@ public class CacheConfiguration {
 
     private final javax.cache.configuration.Configuration<Object, Object> jcacheConfiguration;
 
-    public CacheConfiguration(JHipsterProperties jHipsterProperties) {
+    private final javax.cache.configuration.Configuration<Object, Object> accountHolderCacheConfiguration;
+
+    private final javax.cache.configuration.Configuration<Object, Object> miraklShopCacheConfiguration;
+
+    public CacheConfiguration(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         JHipsterProperties.Cache.Ehcache ehcache =
             jHipsterProperties.getCache().getEhcache();
 
-        jcacheConfiguration = Eh107Configuration.fromEhcacheCacheConfiguration(
+        jcacheConfiguration = cacheConfiguration(ehcache.getMaxEntries(), ehcache.getTimeToLiveSeconds());
+        accountHolderCacheConfiguration = cacheConfiguration(applicationProperties.getAccountHolderCacheMaxEntries(),
+                                                             applicationProperties.getAccountHolderCacheTimeToLiveSeconds());
+        miraklShopCacheConfiguration = cacheConfiguration(applicationProperties.getMiraklShopCacheMaxEntries(),
+                                                          applicationProperties.getMiraklShopCacheTimeToLiveSeconds());
+    }
+
+    private static javax.cache.configuration.Configuration<Object, Object> cacheConfiguration(long maxEntries, long timeToLiveSeconds) {
+        return Eh107Configuration.fromEhcacheCacheConfiguration(
             CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
-                ResourcePoolsBuilder.heap(ehcache.getMaxEntries()))
-                .withExpiry(Expirations.timeToLiveExpiration(Duration.of(ehcache.getTimeToLiveSeconds(), TimeUnit.SECONDS)))
+                ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(Expirations.timeToLiveExpiration(Duration.of(timeToLiveSeconds, TimeUnit.SECONDS)))
                 .build());
     }
 
@@ -70,6 +84,9 @@ public class CacheConfiguration {
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocError.class.getName(), jcacheConfiguration);
             cm.createCache(com.adyen.mirakl.domain.DocRetry.class.getName() + ".docErrors", jcacheConfiguration);
+            cm.createCache(AccountHolderService.ACCOUNT_HOLDER_CACHE, accountHolderCacheConfiguration);
+            cm.createCache(AccountHolderService.ACCOUNT_HOLDER_CODE_CACHE, accountHolderCacheConfiguration);
+            cm.createCache(MiraklShopService.MIRAKL_SHOP_CACHE, miraklShopCacheConfiguration);
             // jhipster-needle-ehcache-add-entry
         };
     }
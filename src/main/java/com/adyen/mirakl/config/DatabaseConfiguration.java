@@ -22,6 +22,8 @@
 
 package com.adyen.mirakl.config;
 
+import com.adyen.mirakl.service.util.AdyenNotificationBatchWriter;
+import com.adyen.mirakl.service.util.NotificationLease;
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.liquibase.AsyncSpringLiquibase;
 
@@ -93,6 +95,18 @@ public class DatabaseConfiguration {
         }
     }
 
+    @Bean
+    public AdyenNotificationBatchWriter adyenNotificationBatchWriter(DataSource dataSource, ApplicationProperties applicationProperties) {
+        return new AdyenNotificationBatchWriter(dataSource,
+                                                applicationProperties.getAdyenNotificationBatchSize(),
+                                                applicationProperties.getAdyenNotificationBatchWaitMillis());
+    }
+
+    @Bean
+    public NotificationLease notificationLease(ApplicationProperties applicationProperties) {
+        return new NotificationLease(applicationProperties.getNotificationDispatchLeaseSeconds());
+    }
+
     @Bean
     public SpringLiquibase liquibase(@Qualifier("taskExecutor") TaskExecutor taskExecutor,
             DataSource dataSource, LiquibaseProperties liquibaseProperties) {
@@ -22,6 +22,7 @@
 
 package com.adyen.mirakl.config;
 
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
 import com.mirakl.client.core.security.MiraklCredential;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -41,4 +42,11 @@ public class MiraklOperatorConfiguration extends MiraklProperties {
     public MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient(){
         return new MiraklMarketplacePlatformOperatorApiClient(getMiraklEnvUrl() + "/api", miraklOperatorCredential());
     }
+
+    @Bean
+    public MiraklShopBatchLoader miraklShopBatchLoader(ApplicationProperties applicationProperties){
+        return new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClient(),
+                                         applicationProperties.getMiraklShopBatchSize(),
+                                         applicationProperties.getMiraklShopBatchWaitMillis());
+    }
 }
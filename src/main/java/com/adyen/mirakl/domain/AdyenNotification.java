@@ -24,10 +24,12 @@ package com.adyen.mirakl.domain;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
 
 import javax.persistence.*;
 
 import java.io.Serializable;
+import java.time.ZonedDateTime;
 import java.util.Objects;
 
 /**
@@ -51,6 +53,25 @@ public class AdyenNotification implements Serializable {
     @Column(name = "processed", nullable = false)
     private boolean processed;
 
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private ZonedDateTime createdAt;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "event_type")
+    private String eventType;
+
+    @Column(name = "account_holder_code")
+    private String accountHolderCode;
+
+    @Column(name = "dispatched_until")
+    private ZonedDateTime dispatchedUntil;
+
+    @Column(name = "dispatched_by")
+    private String dispatchedBy;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -85,6 +106,84 @@ public class AdyenNotification implements Serializable {
     public void setProcessed(boolean processed) {
         this.processed = processed;
     }
+
+    public ZonedDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public AdyenNotification createdAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public void setCreatedAt(ZonedDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public AdyenNotification attempts(int attempts) {
+        this.attempts = attempts;
+        return this;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public AdyenNotification eventType(String eventType) {
+        this.eventType = eventType;
+        return this;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getAccountHolderCode() {
+        return accountHolderCode;
+    }
+
+    public AdyenNotification accountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+        return this;
+    }
+
+    public void setAccountHolderCode(String accountHolderCode) {
+        this.accountHolderCode = accountHolderCode;
+    }
+
+    public ZonedDateTime getDispatchedUntil() {
+        return dispatchedUntil;
+    }
+
+    public AdyenNotification dispatchedUntil(ZonedDateTime dispatchedUntil) {
+        this.dispatchedUntil = dispatchedUntil;
+        return this;
+    }
+
+    public void setDispatchedUntil(ZonedDateTime dispatchedUntil) {
+        this.dispatchedUntil = dispatchedUntil;
+    }
+
+    public String getDispatchedBy() {
+        return dispatchedBy;
+    }
+
+    public AdyenNotification dispatchedBy(String dispatchedBy) {
+        this.dispatchedBy = dispatchedBy;
+        return this;
+    }
+
+    public void setDispatchedBy(String dispatchedBy) {
+        this.dispatchedBy = dispatchedBy;
+    }
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
     @Override
@@ -113,6 +212,12 @@ public class AdyenNotification implements Serializable {
             "id=" + getId() +
             ", rawAdyenNotification='" + getRawAdyenNotification() + "'" +
             ", processed='" + isProcessed() + "'" +
+            ", createdAt='" + getCreatedAt() + "'" +
+            ", attempts='" + getAttempts() + "'" +
+            ", eventType='" + getEventType() + "'" +
+            ", accountHolderCode='" + getAccountHolderCode() + "'" +
+            ", dispatchedUntil='" + getDispatchedUntil() + "'" +
+            ", dispatchedBy='" + getDispatchedBy() + "'" +
             "}";
     }
 }
@@ -48,6 +48,12 @@ public class MiraklDelta implements Serializable {
     @Column(name = "shop_delta")
     private ZonedDateTime shopDelta;
 
+    @Column(name = "shop_checkpoint_offset")
+    private Integer shopCheckpointOffset;
+
+    @Column(name = "shop_checkpoint_delta")
+    private ZonedDateTime shopCheckpointDelta;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -69,6 +75,32 @@ public class MiraklDelta implements Serializable {
     public void setShopDelta(ZonedDateTime shopDelta) {
         this.shopDelta = shopDelta;
     }
+
+    public Integer getShopCheckpointOffset() {
+        return shopCheckpointOffset;
+    }
+
+    public MiraklDelta shopCheckpointOffset(Integer shopCheckpointOffset) {
+        this.shopCheckpointOffset = shopCheckpointOffset;
+        return this;
+    }
+
+    public void setShopCheckpointOffset(Integer shopCheckpointOffset) {
+        this.shopCheckpointOffset = shopCheckpointOffset;
+    }
+
+    public ZonedDateTime getShopCheckpointDelta() {
+        return shopCheckpointDelta;
+    }
+
+    public MiraklDelta shopCheckpointDelta(ZonedDateTime shopCheckpointDelta) {
+        this.shopCheckpointDelta = shopCheckpointDelta;
+        return this;
+    }
+
+    public void setShopCheckpointDelta(ZonedDateTime shopCheckpointDelta) {
+        this.shopCheckpointDelta = shopCheckpointDelta;
+    }
     // jhipster-needle-entity-add-getters-setters - JHipster will add getters and setters here, do not remove
 
     @Override
@@ -96,6 +128,8 @@ public class MiraklDelta implements Serializable {
         return "MiraklDelta{" +
             "id=" + getId() +
             ", shopDelta='" + getShopDelta() + "'" +
+            ", shopCheckpointOffset='" + getShopCheckpointOffset() + "'" +
+            ", shopCheckpointDelta='" + getShopCheckpointDelta() + "'" +
             "}";
     }
 }
@@ -87,6 +87,15 @@ public class MiraklVoucherEntry implements Serializable {
     @Column(name = "total_charged_amount_vat")
     private String totalChargedAmountVat;
 
+    @Column(name = "claimed_by")
+    private String claimedBy;
+
+    @Column(name = "claimed_until")
+    private ZonedDateTime claimedUntil;
+
+    @Column(name = "processed", nullable = false)
+    private boolean processed;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -230,6 +239,45 @@ public class MiraklVoucherEntry implements Serializable {
         this.totalChargedAmountVat = totalChargedAmountVat;
     }
 
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public MiraklVoucherEntry claimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+        return this;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public ZonedDateTime getClaimedUntil() {
+        return claimedUntil;
+    }
+
+    public MiraklVoucherEntry claimedUntil(ZonedDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+        return this;
+    }
+
+    public void setClaimedUntil(ZonedDateTime claimedUntil) {
+        this.claimedUntil = claimedUntil;
+    }
+
+    public boolean isProcessed() {
+        return processed;
+    }
+
+    public MiraklVoucherEntry processed(boolean processed) {
+        this.processed = processed;
+        return this;
+    }
+
+    public void setProcessed(boolean processed) {
+        this.processed = processed;
+    }
+
 
 
     @Override
@@ -290,6 +338,15 @@ public class MiraklVoucherEntry implements Serializable {
             + ", totalChargedAmoutVat='"
             + getTotalChargedAmountVat()
             + "'"
+            + ", claimedBy='"
+            + getClaimedBy()
+            + "'"
+            + ", claimedUntil='"
+            + getClaimedUntil()
+            + "'"
+            + ", processed='"
+            + isProcessed()
+            + "'"
             + "}";
     }
 
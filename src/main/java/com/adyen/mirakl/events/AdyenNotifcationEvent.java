@@ -23,11 +23,17 @@
 package com.adyen.mirakl.events;
 
 import org.springframework.context.ApplicationEvent;
+import com.adyen.mirakl.domain.AdyenNotification;
+import com.adyen.model.marketpay.notification.GenericNotification;
 
 public class AdyenNotifcationEvent extends ApplicationEvent {
 
     private Long dbId;
 
+    private AdyenNotification adyenNotification;
+
+    private GenericNotification genericNotification;
+
     /**
      * Create a new ApplicationEvent.
      *
@@ -38,7 +44,42 @@ public class AdyenNotifcationEvent extends ApplicationEvent {
         this.dbId = dbId;
     }
 
+    /**
+     * Create a new ApplicationEvent carrying the stored notification, so it does not need to be read back
+     *
+     * @param adyenNotification the stored notification
+     */
+    public AdyenNotifcationEvent(final AdyenNotification adyenNotification) {
+        this(adyenNotification.getId());
+        this.adyenNotification = adyenNotification;
+    }
+
+    /**
+     * Create a new ApplicationEvent carrying the notification that was just stored and parsed, so it does not need to be read back nor parsed again
+     *
+     * @param adyenNotification   the stored notification
+     * @param genericNotification the parsed notification
+     */
+    public AdyenNotifcationEvent(final AdyenNotification adyenNotification, final GenericNotification genericNotification) {
+        this(adyenNotification);
+        this.genericNotification = genericNotification;
+    }
+
     public Long getDbId() {
         return dbId;
     }
+
+    /**
+     * @return the stored notification, null if it has to be read from the database
+     */
+    public AdyenNotification getAdyenNotification() {
+        return adyenNotification;
+    }
+
+    /**
+     * @return the parsed notification, null if it has to be parsed from the stored notification
+     */
+    public GenericNotification getGenericNotification() {
+        return genericNotification;
+    }
 }
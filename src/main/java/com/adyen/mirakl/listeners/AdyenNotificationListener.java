@@ -26,21 +26,23 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.AccountHolderService;
 import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.MiraklShopService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
 import com.adyen.model.Name;
-import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.KYCCheckStatusData;
 import com.adyen.model.marketpay.ShareholderContact;
@@ -53,14 +55,11 @@ import com.adyen.model.marketpay.notification.CompensateNegativeBalanceNotificat
 import com.adyen.model.marketpay.notification.GenericNotification;
 import com.adyen.model.marketpay.notification.TransferFundsNotification;
 import com.adyen.notification.NotificationHandler;
-import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
-import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
-import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreatedManualAccountingDocuments;
-import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreatedManualAccountingDocumentReturn;
 import static com.adyen.mirakl.listeners.AdyenNotificationListener.TemplateAndSubjectKey.getSubject;
 import static com.adyen.mirakl.listeners.AdyenNotificationListener.TemplateAndSubjectKey.getTemplate;
 import static com.adyen.model.marketpay.KYCCheckStatusData.CheckStatusEnum;
@@ -101,51 +100,100 @@ public class AdyenNotificationListener {
         }
     }
 
+    private static final Set<String> ACCOUNT_HOLDER_CHANGE_EVENTS = ImmutableSet.of("ACCOUNT_HOLDER_UPDATED", "ACCOUNT_HOLDER_STATUS_CHANGE");
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private NotificationHandler notificationHandler;
     private AdyenNotificationRepository adyenNotificationRepository;
     private MailTemplateService mailTemplateService;
-    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    private MiraklShopService miraklShopService;
     private RetryPayoutService retryPayoutService;
-    private Account adyenAccountService;
+    private AccountHolderService accountHolderService;
     private DocService docService;
     private ShopService shopService;
+    private NotificationExecutors notificationExecutors;
 
     AdyenNotificationListener(final NotificationHandler notificationHandler,
                               final AdyenNotificationRepository adyenNotificationRepository,
                               final MailTemplateService mailTemplateService,
-                              final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient,
-                              final Account adyenAccountService,
+                              final MiraklShopService miraklShopService,
+                              final AccountHolderService accountHolderService,
                               final RetryPayoutService retryPayoutService,
                               final DocService docService,
-                              final ShopService shopService) {
+                              final ShopService shopService,
+                              final NotificationExecutors notificationExecutors) {
         this.notificationHandler = notificationHandler;
         this.adyenNotificationRepository = adyenNotificationRepository;
         this.mailTemplateService = mailTemplateService;
-        this.miraklMarketplacePlatformOperatorApiClient = miraklMarketplacePlatformOperatorApiClient;
-        this.adyenAccountService = adyenAccountService;
+        this.miraklShopService = miraklShopService;
+        this.accountHolderService = accountHolderService;
         this.retryPayoutService = retryPayoutService;
         this.docService = docService;
         this.shopService = shopService;
+        this.notificationExecutors = notificationExecutors;
     }
 
-    @Async
+    /**
+     * Hands the notification to the executor of its kind, behind the notifications of the same account holder still being processed
+     * When that executor is saturated the notification stays stored to be retried later
+     * The notification is leased when it is stored or recovered, the lease is given back when the notification cannot be handled
+     */
     @EventListener
     public void handleContextRefresh(AdyenNotifcationEvent event) {
         log.info(String.format("Received notification DB id: [%d]", event.getDbId()));
-        final AdyenNotification notification = adyenNotificationRepository.findOneById(event.getDbId());
-        final GenericNotification genericNotification = notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
+        final AdyenNotification notification = getAdyenNotification(event);
+        final GenericNotification genericNotification = getGenericNotification(event, notification);
+        final String eventType = notification.getEventType() != null ? notification.getEventType() : String.valueOf(genericNotification.getEventType());
+        if (ACCOUNT_HOLDER_CHANGE_EVENTS.contains(eventType)) {
+            // account holders are cached, drop the cached copy as soon as Adyen tells us it has changed
+            accountHolderService.evict(notification.getAccountHolderCode());
+        }
+        try {
+            notificationExecutors.execute(eventType,
+                                          notification.getAccountHolderCode(),
+                                          () -> processStoredNotification(event.getDbId(), genericNotification),
+                                          () -> keepForRetry(eventType, event.getDbId()));
+        } catch (RejectedExecutionException e) {
+            keepForRetry(eventType, event.getDbId());
+        }
+    }
+
+    private void keepForRetry(final String eventType, final Long dbId) {
+        log.warn("Too many {} notifications queued, notification DB id [{}] is kept for retry", eventType, dbId);
+        adyenNotificationRepository.release(dbId);
+    }
+
+    private void processStoredNotification(final Long dbId, final GenericNotification genericNotification) {
         try {
             processNotification(genericNotification);
-            adyenNotificationRepository.delete(event.getDbId());
+            adyenNotificationRepository.delete(dbId);
         } catch (ApiException e) {
             log.error("Failed processing notification: {}", e.getError(), e);
+            adyenNotificationRepository.release(dbId);
         } catch (Exception e) {
             log.error("Exception: {}", e.getMessage(), e);
+            adyenNotificationRepository.release(dbId);
         }
     }
 
+    private AdyenNotification getAdyenNotification(final AdyenNotifcationEvent event) {
+        if (event.getAdyenNotification() != null) {
+            return event.getAdyenNotification();
+        }
+        return adyenNotificationRepository.findOneById(event.getDbId());
+    }
+
+    /**
+     * Notifications are parsed when they are received, only the ones read back from the database are parsed here
+     */
+    private GenericNotification getGenericNotification(final AdyenNotifcationEvent event, final AdyenNotification notification) {
+        if (event.getGenericNotification() != null) {
+            return event.getGenericNotification();
+        }
+        return notificationHandler.handleMarketpayNotificationJson(notification.getRawAdyenNotification());
+    }
+
     private void processNotification(final GenericNotification genericNotification) throws Exception {
         if (genericNotification instanceof AccountHolderVerificationNotification) {
             processAccountholderVerificationNotification((AccountHolderVerificationNotification) genericNotification);
@@ -164,32 +212,25 @@ public class AdyenNotificationListener {
         }
     }
 
-    private void processCompensateNegativeBalanceNotification(final CompensateNegativeBalanceNotification compensateNegativeBalanceNotification) throws Exception {
-        final List<CompensateNegativeBalanceNotificationRecordContainer> compensateNegativeBalanceNotificationRecordContainerList = compensateNegativeBalanceNotification.getContent().getRecords();
+    private void processCompensateNegativeBalanceNotification(final CompensateNegativeBalanceNotification compensateNegativeBalanceNotification) {
+        final List<CompensateNegativeBalanceNotificationRecord> records = compensateNegativeBalanceNotification.getContent()
+                                                                                                          .getRecords()
+                                                                                                          .stream()
+                                                                                                          .map(CompensateNegativeBalanceNotificationRecordContainer::getCompensateNegativeBalanceNotificationRecord)
+                                                                                                          .collect(Collectors.toList());
         final String pspReference = compensateNegativeBalanceNotification.getPspReference();
 
-        compensateNegativeBalanceNotificationRecordContainerList.forEach(compensateNegativeBalanceNotificationRecordContainer -> {
-            try {
-                MiraklCreatedManualAccountingDocuments miraklCreatedManualAccountingDocuments = shopService.processCompensateNegativeBalance(compensateNegativeBalanceNotificationRecordContainer.getCompensateNegativeBalanceNotificationRecord(),
-                                                                                                                                             pspReference);
-
-                if (miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns().get(0).getManualAccountingDocumentError() != null
-                    && ! miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns().get(0).getManualAccountingDocumentError().getErrors().isEmpty()) {
-                    CompensateNegativeBalanceNotificationRecord notificationRecord = compensateNegativeBalanceNotificationRecordContainer.getCompensateNegativeBalanceNotificationRecord();
-                    mailTemplateService.sendOperatorEmailManualCreditDocumentFailure(notificationRecord.getAccountCode(),
-                                                                                     notificationRecord.getAmount(),
-                                                                                     pspReference,
-                                                                                     miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns()
-                                                                                                                           .get(0)
-                                                                                                                           .getManualAccountingDocumentError()
-                                                                                                                           .getErrors());
-                }
-            } catch (ApiException e) {
-                log.error("Failed processing notification: {}", e.getError(), e);
-            } catch (Exception e) {
-                log.error("Exception: {}", e.getMessage(), e);
+        final List<MiraklCreatedManualAccountingDocumentReturn> results = shopService.processCompensateNegativeBalance(records, pspReference);
+        for (int i = 0; i < records.size(); i++) {
+            final MiraklCreatedManualAccountingDocumentReturn result = results.get(i);
+            if (result != null && result.getManualAccountingDocumentError() != null && ! result.getManualAccountingDocumentError().getErrors().isEmpty()) {
+                final CompensateNegativeBalanceNotificationRecord notificationRecord = records.get(i);
+                mailTemplateService.sendOperatorEmailManualCreditDocumentFailure(notificationRecord.getAccountCode(),
+                                                                                 notificationRecord.getAmount(),
+                                                                                 pspReference,
+                                                                                 result.getManualAccountingDocumentError().getErrors());
             }
-        });
+        }
     }
 
     private void processAccountholderVerificationNotification(final AccountHolderVerificationNotification verificationNotification) throws Exception {
@@ -223,9 +264,7 @@ public class AdyenNotificationListener {
     }
 
     private GetAccountHolderResponse getAccountHolder(String shopId) throws Exception {
-        final GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(shopId);
-        return adyenAccountService.getAccountHolder(getAccountHolderRequest);
+        return accountHolderService.getAccountHolder(shopId);
     }
 
     private void sendBusinessShareholderAwaitingDataEmail(AccountHolderVerificationNotification verificationNotification,
@@ -284,13 +323,7 @@ public class AdyenNotificationListener {
     }
 
     private MiraklShop getShop(String shopId) {
-        final MiraklGetShopsRequest miraklGetShopsRequest = new MiraklGetShopsRequest();
-        miraklGetShopsRequest.setShopIds(ImmutableSet.of(shopId));
-        final List<MiraklShop> shops = miraklMarketplacePlatformOperatorApiClient.getShops(miraklGetShopsRequest).getShops();
-        if (CollectionUtils.isEmpty(shops)) {
-            throw new IllegalStateException("Cannot find shop: " + shopId);
-        }
-        return shops.iterator().next();
+        return miraklShopService.getShop(shopId);
     }
 
 
@@ -328,13 +361,8 @@ public class AdyenNotificationListener {
         if (transferFundsNotification.getContent().getStatus().getStatusCode().equals("Failed")) {
 
             // retrieve accountHolderCode from accountCode
-            final GetAccountHolderRequest getAccountHolderSourceRequest = new GetAccountHolderRequest();
-            getAccountHolderSourceRequest.setAccountCode(transferFundsNotification.getContent().getSourceAccountCode());
-            final GetAccountHolderResponse accountHolderSourceResponse = adyenAccountService.getAccountHolder(getAccountHolderSourceRequest);
-
-            final GetAccountHolderRequest getAccountHolderDestinationRequest = new GetAccountHolderRequest();
-            getAccountHolderDestinationRequest.setAccountCode(transferFundsNotification.getContent().getDestinationAccountCode());
-            final GetAccountHolderResponse accountHolderDestinationResponse = adyenAccountService.getAccountHolder(getAccountHolderDestinationRequest);
+            final GetAccountHolderResponse accountHolderSourceResponse = accountHolderService.getAccountHolderByAccountCode(transferFundsNotification.getContent().getSourceAccountCode());
+            final GetAccountHolderResponse accountHolderDestinationResponse = accountHolderService.getAccountHolderByAccountCode(transferFundsNotification.getContent().getDestinationAccountCode());
 
 
             mailTemplateService.sendOperatorEmailTransferFundsFailure(accountHolderSourceResponse.getAccountHolderCode(),
@@ -0,0 +1,144 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.listeners;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Separate executors per class of notification, so a flood of one kind of notification cannot hold back the others
+ * Notifications of the same account holder run one after the other in the order they were received, whatever their kind,
+ * notifications of different account holders run in parallel
+ * Queue depth and active threads of every executor are exposed as metrics
+ */
+public class NotificationExecutors implements PublicMetrics {
+
+    public static final String ACCOUNT_HOLDER = "accountHolder";
+    public static final String VERIFICATION = "verification";
+    public static final String FUNDS = "funds";
+
+    private static final Map<String, String> EXECUTOR_BY_EVENT_TYPE = ImmutableMap.of("ACCOUNT_HOLDER_VERIFICATION", VERIFICATION,
+                                                                                       "ACCOUNT_HOLDER_PAYOUT", FUNDS,
+                                                                                       "TRANSFER_FUNDS", FUNDS,
+                                                                                       "COMPENSATE_NEGATIVE_BALANCE", FUNDS);
+
+    private final Logger log = LoggerFactory.getLogger(NotificationExecutors.class);
+
+    private final Map<String, Executor> executors;
+
+    // last notification queued per account holder, the next notification of that account holder runs once it is done
+    private final ConcurrentMap<String, CompletableFuture<Void>> pendingByAccountHolderCode = new ConcurrentHashMap<>();
+
+    public NotificationExecutors(final Executor accountHolderExecutor, final Executor verificationExecutor, final Executor fundsExecutor) {
+        this.executors = ImmutableMap.of(ACCOUNT_HOLDER, accountHolderExecutor, VERIFICATION, verificationExecutor, FUNDS, fundsExecutor);
+    }
+
+    /**
+     * Verification notifications and fund related notifications have their own executor, all other notifications share the account holder executor
+     */
+    public Executor forEventType(final String eventType) {
+        return executors.get(EXECUTOR_BY_EVENT_TYPE.getOrDefault(eventType, ACCOUNT_HOLDER));
+    }
+
+    /**
+     * Run the task on the executor of its kind once the notifications received before for the same account holder are processed
+     * Notifications without account holder code are not ordered
+     * A task queued behind another one is handed to its executor only when the previous one is done, when that executor is saturated by then
+     * onRejected is called on the thread which completed the previous task and the notifications queued behind it go on
+     *
+     * @throws RejectedExecutionException if the executor is saturated and the task cannot be queued right away
+     */
+    public void execute(final String eventType, final String accountHolderCode, final Runnable task, final Runnable onRejected) {
+        final Executor executor = forEventType(eventType);
+        if (accountHolderCode == null) {
+            executor.execute(task);
+            return;
+        }
+        final CompletableFuture<Void> processed = new CompletableFuture<>();
+        final CompletableFuture<Void> pending = pendingByAccountHolderCode.put(accountHolderCode, processed);
+        processed.whenComplete((result, failure) -> {
+            pendingByAccountHolderCode.remove(accountHolderCode, processed);
+            if (failure != null) {
+                log.warn("Could not process {} notification of account holder {}, it is kept for retry: {}", eventType, accountHolderCode, failure.getMessage());
+            }
+        });
+        if (pending == null) {
+            submit(executor, task, processed);
+            return;
+        }
+        pending.whenComplete((result, failure) -> {
+            try {
+                submit(executor, task, processed);
+            } catch (RejectedExecutionException e) {
+                onRejected.run();
+            }
+        });
+    }
+
+    /**
+     * Hands the task to the executor, processed completes once the task ran or could not be queued
+     */
+    private static void submit(final Executor executor, final Runnable task, final CompletableFuture<Void> processed) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    processed.complete(null);
+                } catch (Throwable e) {
+                    processed.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            processed.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("notifications.accountHolders.pending", pendingByAccountHolderCode.size()));
+        executors.forEach((name, executor) -> {
+            if (executor instanceof ThreadPoolTaskExecutor && ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor() != null) {
+                final ThreadPoolTaskExecutor threadPoolTaskExecutor = (ThreadPoolTaskExecutor) executor;
+                metrics.add(new Metric<>("notifications." + name + ".queued", threadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size()));
+                metrics.add(new Metric<>("notifications." + name + ".active", threadPoolTaskExecutor.getActiveCount()));
+            }
+        });
+        return metrics;
+    }
+}
@@ -24,8 +24,14 @@ package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.AdyenNotification;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.ZonedDateTime;
+import java.util.List;
 
 
 /**
@@ -37,4 +43,35 @@ public interface AdyenNotificationRepository extends JpaRepository<AdyenNotifica
 
     AdyenNotification findOneById(Long id);
 
+    /**
+     * Notifications created before createdBefore which are not queued or being handled, unless their lease expired before now
+     */
+    @Query("select n from AdyenNotification n where n.id > :afterId and n.attempts < :maxAttempts and (n.createdAt is null or n.createdAt < :createdBefore) "
+           + "and (n.dispatchedUntil is null or n.dispatchedUntil < :now) order by n.id")
+    List<AdyenNotification> findUnprocessed(@Param("afterId") Long afterId,
+                                            @Param("maxAttempts") int maxAttempts,
+                                            @Param("createdBefore") ZonedDateTime createdBefore,
+                                            @Param("now") ZonedDateTime now,
+                                            Pageable pageable);
+
+    /**
+     * Like findUnprocessed, the leases taken by another owner than the given one are ignored, they were left by an earlier boot
+     */
+    @Query("select n from AdyenNotification n where n.id > :afterId and n.attempts < :maxAttempts and (n.createdAt is null or n.createdAt < :createdBefore) "
+           + "and (n.dispatchedUntil is null or n.dispatchedUntil < :now or n.dispatchedBy is null or n.dispatchedBy <> :owner) order by n.id")
+    List<AdyenNotification> findUnprocessedNotLeasedBy(@Param("afterId") Long afterId,
+                                                       @Param("maxAttempts") int maxAttempts,
+                                                       @Param("createdBefore") ZonedDateTime createdBefore,
+                                                       @Param("now") ZonedDateTime now,
+                                                       @Param("owner") String owner,
+                                                       Pageable pageable);
+
+    /**
+     * Gives the notification back to recovery once its handling failed or could not be queued
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update AdyenNotification n set n.dispatchedUntil = null where n.id = :id")
+    int release(@Param("id") Long id);
+
 }
@@ -23,10 +23,16 @@
 package com.adyen.mirakl.repository;
 
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.time.ZonedDateTime;
+import java.util.List;
+
 
 /**
  * Spring Data JPA repository for the MiraklVoucherEntry entity.
@@ -35,4 +41,66 @@ import org.springframework.data.jpa.repository.*;
 @Repository
 public interface MiraklVoucherEntryRepository extends JpaRepository<MiraklVoucherEntry, Long> {
 
+    /**
+     * Ids of the entries not paid out yet which no payout run holds, or whose lease has expired, oldest first
+     */
+    @Query("select e.id from MiraklVoucherEntry e where e.processed = false and (e.claimedUntil is null or e.claimedUntil < :now) order by e.id")
+    List<Long> findClaimableIds(@Param("now") ZonedDateTime now, Pageable pageable);
+
+    /**
+     * Leases the given entries to claimedBy until claimedUntil, entries another payout run claimed in the meantime are left alone
+     *
+     * @return the number of entries claimed
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update MiraklVoucherEntry e set e.claimedBy = :claimedBy, e.claimedUntil = :claimedUntil "
+           + "where e.id in :ids and e.processed = false and (e.claimedUntil is null or e.claimedUntil < :now)")
+    int claim(@Param("claimedBy") String claimedBy, @Param("claimedUntil") ZonedDateTime claimedUntil, @Param("now") ZonedDateTime now, @Param("ids") List<Long> ids);
+
+    /**
+     * Extends the lease of the entry until claimedUntil, as long as claimedBy still holds it
+     *
+     * @return 1 when the lease was renewed, 0 when the entry was taken over by another payout run, paid out or deleted
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update MiraklVoucherEntry e set e.claimedUntil = :claimedUntil where e.id = :id and e.claimedBy = :claimedBy and e.processed = false")
+    int renewClaim(@Param("id") Long id, @Param("claimedBy") String claimedBy, @Param("claimedUntil") ZonedDateTime claimedUntil);
+
+    /**
+     * Marks the entry as paid out in its own transaction, so it is never claimed again even when the payout run stops before its cleanup
+     *
+     * @return the number of entries marked
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update MiraklVoucherEntry e set e.processed = true where e.id = :id")
+    int markProcessed(@Param("id") Long id);
+
+    /**
+     * Leases the entries paid out by payout runs whose lease has expired to claimedBy, so the commission of those entries is paid out once
+     *
+     * @return the number of entries claimed
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("update MiraklVoucherEntry e set e.claimedBy = :claimedBy, e.claimedUntil = :claimedUntil "
+           + "where e.processed = true and (e.claimedUntil is null or e.claimedUntil < :now)")
+    int claimProcessed(@Param("claimedBy") String claimedBy, @Param("claimedUntil") ZonedDateTime claimedUntil, @Param("now") ZonedDateTime now);
+
+    List<MiraklVoucherEntry> findByClaimedByAndProcessedTrueOrderByIdAsc(String claimedBy);
+
+    /**
+     * Deletes the entries leased to claimedBy which are marked as paid out, in a single statement
+     *
+     * @return the number of entries deleted
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("delete from MiraklVoucherEntry e where e.processed = true and e.claimedBy = :claimedBy")
+    int deleteProcessedClaimedBy(@Param("claimedBy") String claimedBy);
+
+    List<MiraklVoucherEntry> findByClaimedByOrderByIdAsc(String claimedBy);
+
 }
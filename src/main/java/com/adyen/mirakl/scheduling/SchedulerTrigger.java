@@ -23,13 +23,18 @@
 package com.adyen.mirakl.scheduling;
 
 
+import com.adyen.mirakl.service.AdyenNotificationRecoveryService;
+import com.adyen.mirakl.service.AdyenNotificationService;
 import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.RetryEmailService;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -53,6 +58,12 @@ public class SchedulerTrigger {
     @Resource
     private RetryPayoutService retryPayoutService;
 
+    @Resource
+    private AdyenNotificationRecoveryService adyenNotificationRecoveryService;
+
+    @Resource
+    private AdyenNotificationService adyenNotificationService;
+
     @Scheduled(cron = "${application.miraklPullCron}")
     public void runShopUpdates() {
         log.debug("Pulling shops from Mirakl");
@@ -81,4 +92,21 @@ public class SchedulerTrigger {
         docService.retryFailedDocuments();
     }
 
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverNotificationsOnStartup() {
+        log.debug("Recovering notifications left over by the previous run");
+        adyenNotificationRecoveryService.recoverNotificationsOnStartup();
+    }
+
+    @Scheduled(cron = "${application.notificationRecoveryCron}")
+    public void recoverNotifications() {
+        adyenNotificationRecoveryService.recoverNotifications();
+    }
+
+    @Scheduled(cron = "${application.removeNotificationDedupeKeysCron}")
+    public void removeNotificationDedupeKeys() {
+        adyenNotificationService.removeExpiredDedupeKeys();
+    }
+
 }
@@ -0,0 +1,183 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import com.adyen.model.marketpay.AccountHolderDetails;
+import com.adyen.model.marketpay.GetAccountHolderRequest;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
+import com.adyen.service.Account;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Read-through cache in front of GetAccountHolder, account holders are cached by accountHolderCode and can be looked up by
+ * accountCode as well. Entries expire after the configured time to live and are evicted when the account holder is changed.
+ * <p>
+ * The bank account used for bank statements is indexed per shop sync run, from every account holder seen during that run.
+ */
+@Service
+public class AccountHolderService implements PublicMetrics {
+
+    public static final String ACCOUNT_HOLDER_CACHE = "accountHolders";
+    public static final String ACCOUNT_HOLDER_CODE_CACHE = "accountHolderCodesByAccountCode";
+
+    private final Logger log = LoggerFactory.getLogger(AccountHolderService.class);
+
+    private final Account adyenAccountService;
+    private final CacheManager cacheManager;
+
+    private final ConcurrentMap<String, String> bankAccountUUIDsByAccountHolderCode = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AccountHolderService(final Account adyenAccountService, final CacheManager cacheManager) {
+        this.adyenAccountService = adyenAccountService;
+        this.cacheManager = cacheManager;
+    }
+
+    public GetAccountHolderResponse getAccountHolder(final String accountHolderCode) throws Exception {
+        final GetAccountHolderResponse cached = getAccountHolderCache().get(accountHolderCode, GetAccountHolderResponse.class);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
+        getAccountHolderRequest.setAccountHolderCode(accountHolderCode);
+        return store(adyenAccountService.getAccountHolder(getAccountHolderRequest));
+    }
+
+    public GetAccountHolderResponse getAccountHolderByAccountCode(final String accountCode) throws Exception {
+        // an account never moves to another account holder, so only the account holder itself needs to be fetched again
+        final String accountHolderCode = getAccountHolderCodeCache().get(accountCode, String.class);
+        if (accountHolderCode != null) {
+            return getAccountHolder(accountHolderCode);
+        }
+        misses.incrementAndGet();
+
+        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
+        getAccountHolderRequest.setAccountCode(accountCode);
+        return store(adyenAccountService.getAccountHolder(getAccountHolderRequest));
+    }
+
+    /**
+     * Drop the cached account holder, to be called whenever it has been changed in Adyen
+     */
+    public void evict(final String accountHolderCode) {
+        if (StringUtils.isNotEmpty(accountHolderCode)) {
+            log.debug("Evicting account holder: {}", accountHolderCode);
+            getAccountHolderCache().evict(accountHolderCode);
+        }
+    }
+
+    /**
+     * UUID of the first bank account of the account holder, null if it has none
+     */
+    public String getBankAccountUUID(final String accountHolderCode) throws Exception {
+        final String bankAccountUUID = bankAccountUUIDsByAccountHolderCode.get(accountHolderCode);
+        if (bankAccountUUID != null) {
+            return bankAccountUUID;
+        }
+        final GetAccountHolderResponse getAccountHolderResponse = getAccountHolder(accountHolderCode);
+        return getAccountHolderResponse == null ? null : firstBankAccountUUID(getAccountHolderResponse.getAccountHolderDetails());
+    }
+
+    /**
+     * Index the bank account of an account holder returned by Adyen, e.g. in a create or update response
+     */
+    public void indexBankAccount(final String accountHolderCode, final AccountHolderDetails accountHolderDetails) {
+        if (StringUtils.isEmpty(accountHolderCode)) {
+            return;
+        }
+        final String bankAccountUUID = firstBankAccountUUID(accountHolderDetails);
+        if (bankAccountUUID != null) {
+            bankAccountUUIDsByAccountHolderCode.put(accountHolderCode, bankAccountUUID);
+        } else {
+            bankAccountUUIDsByAccountHolderCode.remove(accountHolderCode);
+        }
+    }
+
+    /**
+     * Drop the indexed bank account, to be called whenever bank accounts of the account holder have been removed
+     */
+    public void evictBankAccount(final String accountHolderCode) {
+        if (StringUtils.isNotEmpty(accountHolderCode)) {
+            bankAccountUUIDsByAccountHolderCode.remove(accountHolderCode);
+        }
+    }
+
+    /**
+     * Start a new index, called at the start of every shop sync run
+     */
+    public void clearBankAccounts() {
+        bankAccountUUIDsByAccountHolderCode.clear();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return ImmutableList.<Metric<?>>of(new Metric<>("cache.accountHolders.hits", hits.get()),
+                                          new Metric<>("cache.accountHolders.misses", misses.get()));
+    }
+
+    private GetAccountHolderResponse store(final GetAccountHolderResponse getAccountHolderResponse) {
+        if (getAccountHolderResponse == null || StringUtils.isEmpty(getAccountHolderResponse.getAccountHolderCode())) {
+            return getAccountHolderResponse;
+        }
+        final String accountHolderCode = getAccountHolderResponse.getAccountHolderCode();
+        getAccountHolderCache().put(accountHolderCode, getAccountHolderResponse);
+        indexBankAccount(accountHolderCode, getAccountHolderResponse.getAccountHolderDetails());
+        if (getAccountHolderResponse.getAccounts() != null) {
+            getAccountHolderResponse.getAccounts().forEach(account -> getAccountHolderCodeCache().put(account.getAccountCode(), accountHolderCode));
+        }
+        return getAccountHolderResponse;
+    }
+
+    private static String firstBankAccountUUID(final AccountHolderDetails accountHolderDetails) {
+        if (accountHolderDetails == null || accountHolderDetails.getBankAccountDetails() == null || accountHolderDetails.getBankAccountDetails().isEmpty()) {
+            return null;
+        }
+        return StringUtils.defaultIfEmpty(accountHolderDetails.getBankAccountDetails().get(0).getBankAccountUUID(), null);
+    }
+
+    private Cache getAccountHolderCache() {
+        return cacheManager.getCache(ACCOUNT_HOLDER_CACHE);
+    }
+
+    private Cache getAccountHolderCodeCache() {
+        return cacheManager.getCache(ACCOUNT_HOLDER_CODE_CACHE);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.springframework.stereotype.Service;
+import com.adyen.Client;
+import com.adyen.Config;
+import com.adyen.model.marketpay.DocumentDetail;
+import com.adyen.model.marketpay.Error;
+import com.adyen.model.marketpay.UploadDocumentResponse;
+import com.adyen.service.exception.ApiException;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Uploads documents to Adyen without loading them in memory: the content is streamed through a Base64 encoder straight into the request body
+ */
+@Service
+public class AdyenDocumentUploader {
+
+    /**
+     * Heap used per upload, the content is copied to the encoder in chunks of this size
+     */
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final Gson GSON = new Gson();
+    private static final byte[] REQUEST_SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Used when the Adyen client config leaves its timeouts unset
+     */
+    private static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 60000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 300000;
+
+    private final Client adyenClient;
+
+    public AdyenDocumentUploader(final Client adyenClient) {
+        this.adyenClient = adyenClient;
+    }
+
+    /**
+     * Upload a document, the content is read but not closed, pass a negative size when the size is unknown
+     */
+    public UploadDocumentResponse uploadDocument(final DocumentDetail documentDetail, final InputStream content, final long contentSize) throws IOException, ApiException {
+        final Config config = adyenClient.getConfig();
+        final HttpURLConnection connection = (HttpURLConnection) new URL(config.getMarketPayEndpoint() + "/Account/" + Client.MARKETPAY_ACCOUNT_API_VERSION + "/uploadDocument").openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeout(config.getConnectionTimeoutMillis(), DEFAULT_CONNECTION_TIMEOUT_MILLIS));
+            connection.setReadTimeout(timeout(config.getReadTimeoutMillis(), DEFAULT_READ_TIMEOUT_MILLIS));
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Accept-Charset", StandardCharsets.UTF_8.name());
+            connection.setRequestProperty("User-Agent", config.getApplicationName());
+            final String credentials = config.getUsername() + ":" + config.getPassword();
+            connection.setRequestProperty("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+            if (contentSize < 0) {
+                connection.setChunkedStreamingMode(BUFFER_SIZE);
+            } else {
+                connection.setFixedLengthStreamingMode(contentLength(documentDetail, contentSize));
+            }
+
+            try (OutputStream requestBody = connection.getOutputStream()) {
+                writeRequest(documentDetail, content, requestBody);
+            }
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw apiException(read(connection.getErrorStream()), responseCode);
+            }
+            try (Reader response = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                return GSON.fromJson(response, UploadDocumentResponse.class);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Writes the JSON of an UploadDocumentRequest, the documentContent being the Base64 encoded content
+     */
+    static void writeRequest(final DocumentDetail documentDetail, final InputStream content, final OutputStream requestBody) throws IOException {
+        requestBody.write(requestPrefix(documentDetail));
+        final OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(requestBody));
+        ByteStreams.copy(content, encoder);
+        // closing the encoder writes the padding
+        encoder.close();
+        requestBody.write(REQUEST_SUFFIX);
+    }
+
+    static long contentLength(final DocumentDetail documentDetail, final long contentSize) {
+        return requestPrefix(documentDetail).length + (contentSize + 2) / 3 * 4 + REQUEST_SUFFIX.length;
+    }
+
+    private static byte[] requestPrefix(final DocumentDetail documentDetail) {
+        return ("{\"documentDetail\":" + GSON.toJson(documentDetail) + ",\"documentContent\":\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same as the Adyen client, the error returned by Adyen is parsed so its error code can be logged
+     */
+    static ApiException apiException(final String responseBody, final int responseCode) {
+        final ApiException apiException = new ApiException(responseBody, responseCode);
+        if (responseBody != null) {
+            try {
+                apiException.setError(GSON.fromJson(responseBody, Error.class));
+            } catch (JsonParseException e) {
+                // not an Adyen error, the response body is kept as the message
+            }
+        }
+        return apiException;
+    }
+
+    private static int timeout(final int configuredMillis, final int defaultMillis) {
+        return configuredMillis > 0 ? configuredMillis : defaultMillis;
+    }
+
+    private static String read(final InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            return CharStreams.toString(reader);
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
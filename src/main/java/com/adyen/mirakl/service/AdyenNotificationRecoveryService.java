@@ -0,0 +1,143 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.AdyenNotification;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.util.NotificationLease;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Notifications are only deleted once processed, the ones left behind by a crash or a failure are handed to the listener again
+ * Leftover notifications are paged through in id order and republished at a bounded rate, so a backlog drains without flooding Adyen or Mirakl
+ * Notifications still queued or being handled hold a dispatch lease and are left alone, except on startup for the leases left by an earlier boot
+ */
+@Service
+public class AdyenNotificationRecoveryService {
+
+    private final Logger log = LoggerFactory.getLogger(AdyenNotificationRecoveryService.class);
+
+    private final AdyenNotificationRepository adyenNotificationRepository;
+
+    private final ApplicationEventPublisher publisher;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final NotificationLease notificationLease;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public AdyenNotificationRecoveryService(final AdyenNotificationRepository adyenNotificationRepository,
+                                            final ApplicationEventPublisher publisher,
+                                            final ApplicationProperties applicationProperties,
+                                            final NotificationLease notificationLease) {
+        this.adyenNotificationRepository = adyenNotificationRepository;
+        this.publisher = publisher;
+        this.applicationProperties = applicationProperties;
+        this.notificationLease = notificationLease;
+    }
+
+    /**
+     * Republish the notifications older than notificationRecoveryMinAgeSeconds which were retried less than notificationRecoveryMaxAttempts times
+     *
+     * @return the number of notifications republished
+     */
+    public int recoverNotifications() {
+        return recoverNotifications(false);
+    }
+
+    /**
+     * Like recoverNotifications, the notifications leased by an earlier boot are republished as well, they will not be handled by that boot anymore
+     *
+     * @return the number of notifications republished
+     */
+    public int recoverNotificationsOnStartup() {
+        return recoverNotifications(true);
+    }
+
+    private int recoverNotifications(final boolean startup) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Notification recovery is already running");
+            return 0;
+        }
+        try {
+            return recover(startup);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int recover(final boolean startup) {
+        final int pageSize = applicationProperties.getNotificationRecoveryPageSize();
+        final int maxAttempts = applicationProperties.getNotificationRecoveryMaxAttempts();
+        final ZonedDateTime now = ZonedDateTime.now();
+        final ZonedDateTime createdBefore = now.minusSeconds(applicationProperties.getNotificationRecoveryMinAgeSeconds());
+        final RateLimiter rateLimiter = RateLimiter.create(applicationProperties.getNotificationRecoveryPerSecond());
+
+        int recovered = 0;
+        long lastId = 0L;
+        List<AdyenNotification> page;
+        do {
+            final PageRequest pageRequest = new PageRequest(0, pageSize);
+            page = startup
+                ? adyenNotificationRepository.findUnprocessedNotLeasedBy(lastId, maxAttempts, createdBefore, now, notificationLease.getOwner(), pageRequest)
+                : adyenNotificationRepository.findUnprocessed(lastId, maxAttempts, createdBefore, now, pageRequest);
+            for (AdyenNotification notification : page) {
+                lastId = notification.getId();
+                notification.setAttempts(notification.getAttempts() + 1);
+                adyenNotificationRepository.save(notificationLease.take(notification));
+                logAttempt(notification, now, maxAttempts);
+
+                rateLimiter.acquire();
+                publisher.publishEvent(new AdyenNotifcationEvent(notification));
+                recovered++;
+            }
+        } while (page.size() == pageSize);
+
+        if (recovered > 0) {
+            log.info("Republished {} stored notifications", recovered);
+        }
+        return recovered;
+    }
+
+    private void logAttempt(final AdyenNotification notification, final ZonedDateTime now, final int maxAttempts) {
+        final String age = notification.getCreatedAt() == null ? "unknown" : Duration.between(notification.getCreatedAt(), now).toString();
+        if (notification.getAttempts() >= maxAttempts) {
+            log.error("Last retry of notification DB id: [{}], age: [{}], it will not be retried anymore after {} attempts", notification.getId(), age, notification.getAttempts());
+        } else {
+            log.info("Retrying notification DB id: [{}], age: [{}], attempt: [{}]", notification.getId(), age, notification.getAttempts());
+        }
+    }
+}
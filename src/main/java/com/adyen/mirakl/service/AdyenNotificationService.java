@@ -0,0 +1,171 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.AdyenNotification;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
+import com.adyen.mirakl.service.util.AdyenNotificationBatchWriter;
+import com.adyen.mirakl.service.util.NotificationLease;
+import com.adyen.model.marketpay.notification.AccountHolderCreateNotification;
+import com.adyen.model.marketpay.notification.AccountHolderPayoutNotification;
+import com.adyen.model.marketpay.notification.AccountHolderStatusChangeNotification;
+import com.adyen.model.marketpay.notification.AccountHolderUpdateNotification;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
+import com.adyen.model.marketpay.notification.GenericNotification;
+import com.adyen.notification.NotificationHandler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Ingestion of the notifications sent by Adyen: the notification is parsed once and validated on the receiving thread, malformed
+ * notifications are rejected before being stored
+ * The raw notification is stored so it survives a crash, together with its event type and account holder code, then handed to the listener
+ * already parsed, which processes it asynchronously without reading it back from the database nor parsing it again
+ * The notification is stored already leased, so recovery leaves it alone while it is queued and handled
+ * Concurrent notifications are stored together by the {@link AdyenNotificationBatchWriter}
+ * Copies of a notification (same pspReference and event type) are acknowledged without being stored or processed again: recently seen
+ * notifications are remembered in memory, older ones are detected by the unique dedupe key stored with each notification
+ */
+@Service
+public class AdyenNotificationService {
+
+    private final Logger log = LoggerFactory.getLogger(AdyenNotificationService.class);
+
+    private final AdyenNotificationBatchWriter adyenNotificationBatchWriter;
+
+    private final ApplicationEventPublisher publisher;
+
+    private final ApplicationProperties applicationProperties;
+
+    private final NotificationHandler notificationHandler;
+
+    private final NotificationLease notificationLease;
+
+    private final Cache<String, Boolean> recentDedupeKeys;
+
+    public AdyenNotificationService(final AdyenNotificationBatchWriter adyenNotificationBatchWriter,
+                                    final ApplicationEventPublisher publisher,
+                                    final ApplicationProperties applicationProperties,
+                                    final NotificationHandler notificationHandler,
+                                    final NotificationLease notificationLease) {
+        this.adyenNotificationBatchWriter = adyenNotificationBatchWriter;
+        this.publisher = publisher;
+        this.applicationProperties = applicationProperties;
+        this.notificationHandler = notificationHandler;
+        this.notificationLease = notificationLease;
+        this.recentDedupeKeys = CacheBuilder.newBuilder().maximumSize(applicationProperties.getNotificationDedupeCacheSize()).build();
+    }
+
+    /**
+     * Store the notification and queue it for processing, once this returns the notification can be acknowledged to Adyen
+     *
+     * @return the stored notification, or null if the notification was already received
+     * @throws IllegalArgumentException if the notification is malformed
+     */
+    public AdyenNotification ingest(final String rawAdyenNotification) {
+        final GenericNotification genericNotification = parse(rawAdyenNotification);
+        if (genericNotification.getEventType() == null) {
+            throw new IllegalArgumentException("Notification without event type");
+        }
+        final String eventType = String.valueOf(genericNotification.getEventType());
+        final String pspReference = genericNotification.getPspReference();
+        final String dedupeKey = pspReference == null ? null : pspReference + ":" + eventType;
+        if (dedupeKey != null && recentDedupeKeys.getIfPresent(dedupeKey) != null) {
+            log.info("Notification {} was already received", dedupeKey);
+            return null;
+        }
+
+        final AdyenNotification result = notificationLease.take(new AdyenNotification().rawAdyenNotification(rawAdyenNotification)
+                                                                                       .eventType(eventType)
+                                                                                       .accountHolderCode(getAccountHolderCode(genericNotification)));
+        final Long id = adyenNotificationBatchWriter.append(result, dedupeKey);
+        if (dedupeKey != null) {
+            recentDedupeKeys.put(dedupeKey, Boolean.TRUE);
+        }
+        if (id == null) {
+            return null;
+        }
+
+        result.setId(id);
+        log.debug("Stored notification DB id: [{}]", result.getId());
+        publisher.publishEvent(new AdyenNotifcationEvent(result, genericNotification));
+        return result;
+    }
+
+    /**
+     * Forget the dedupe keys older than notificationDedupeRetentionDays
+     */
+    public void removeExpiredDedupeKeys() {
+        final Instant createdBefore = Instant.now().minus(applicationProperties.getNotificationDedupeRetentionDays(), ChronoUnit.DAYS);
+        final int removed = adyenNotificationBatchWriter.removeDedupeKeysCreatedBefore(createdBefore);
+        log.debug("Removed {} notification dedupe keys", removed);
+    }
+
+    private GenericNotification parse(final String rawAdyenNotification) {
+        final GenericNotification genericNotification;
+        try {
+            genericNotification = notificationHandler.handleMarketpayNotificationJson(rawAdyenNotification);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed notification: " + e.getMessage(), e);
+        }
+        if (genericNotification == null) {
+            throw new IllegalArgumentException("Malformed notification: not a marketpay notification");
+        }
+        return genericNotification;
+    }
+
+    /**
+     * The account holder the notification is about, null for the notifications which are not about a single account holder or lack content
+     */
+    private static String getAccountHolderCode(final GenericNotification genericNotification) {
+        if (genericNotification instanceof AccountHolderVerificationNotification) {
+            final AccountHolderVerificationNotification notification = (AccountHolderVerificationNotification) genericNotification;
+            return notification.getContent() == null ? null : notification.getContent().getAccountHolderCode();
+        }
+        if (genericNotification instanceof AccountHolderStatusChangeNotification) {
+            final AccountHolderStatusChangeNotification notification = (AccountHolderStatusChangeNotification) genericNotification;
+            return notification.getContent() == null ? null : notification.getContent().getAccountHolderCode();
+        }
+        if (genericNotification instanceof AccountHolderPayoutNotification) {
+            final AccountHolderPayoutNotification notification = (AccountHolderPayoutNotification) genericNotification;
+            return notification.getContent() == null ? null : notification.getContent().getAccountHolderCode();
+        }
+        if (genericNotification instanceof AccountHolderUpdateNotification) {
+            final AccountHolderUpdateNotification notification = (AccountHolderUpdateNotification) genericNotification;
+            return notification.getContent() == null ? null : notification.getContent().getAccountHolderCode();
+        }
+        if (genericNotification instanceof AccountHolderCreateNotification) {
+            final AccountHolderCreateNotification notification = (AccountHolderCreateNotification) genericNotification;
+            return notification.getContent() == null ? null : notification.getContent().getAccountHolderCode();
+        }
+        return null;
+    }
+}
@@ -73,9 +73,35 @@ public class DeltaService {
         miraklDeltaRepository.saveAndFlush(miraklDelta);
     }
 
+    /**
+     * Move the shop delta forward, the checkpoint of the finished run is cleared
+     */
     public void updateShopDelta(ZonedDateTime delta) {
         MiraklDelta entity = miraklDeltaRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new IllegalStateException("No shopDelta found"));
         entity.setShopDelta(delta);
+        entity.setShopCheckpointOffset(null);
+        entity.setShopCheckpointDelta(null);
+        miraklDeltaRepository.saveAndFlush(entity);
+    }
+
+    /**
+     * Get the checkpoint left by an interrupted shop sync
+     * Returns empty if the last shop sync finished
+     */
+    public Optional<MiraklDelta> getShopCheckpoint() {
+        return miraklDeltaRepository.findFirstByOrderByIdDesc().filter(miraklDelta -> miraklDelta.getShopCheckpointOffset() != null && miraklDelta.getShopCheckpointDelta() != null);
+    }
+
+    /**
+     * Store the number of shops of the current window that are fully processed
+     *
+     * @param offset    offset from which an interrupted shop sync can resume
+     * @param nextDelta shop delta to use once the current window is finished
+     */
+    public void updateShopCheckpoint(int offset, ZonedDateTime nextDelta) {
+        MiraklDelta entity = miraklDeltaRepository.findFirstByOrderByIdDesc().orElseThrow(() -> new IllegalStateException("No shopDelta found"));
+        entity.setShopCheckpointOffset(offset);
+        entity.setShopCheckpointDelta(nextDelta);
         miraklDeltaRepository.saveAndFlush(entity);
     }
 
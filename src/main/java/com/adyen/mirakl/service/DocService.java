@@ -22,13 +22,22 @@
 
 package com.adyen.mirakl.service;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,13 +56,11 @@ import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
 import com.adyen.mirakl.service.util.GetShopDocumentsRequest;
+import com.adyen.mirakl.service.util.StageTimings;
 import com.adyen.model.marketpay.DocumentDetail;
-import com.adyen.model.marketpay.GetAccountHolderRequest;
-import com.adyen.model.marketpay.GetAccountHolderResponse;
-import com.adyen.model.marketpay.UploadDocumentRequest;
 import com.adyen.model.marketpay.UploadDocumentResponse;
-import com.adyen.service.Account;
 import com.adyen.service.exception.ApiException;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -61,7 +68,6 @@ import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiC
 import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklDownloadShopsDocumentsRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 
 @Service
 public class DocService {
@@ -71,11 +77,20 @@ public class DocService {
     private static final String UBO_ENTITY_TYPE = "ubo";
     private static final String INDIVIDUAL_ENTITY_TYPE = "individual";
 
+    private static final String STAGE_DOWNLOAD = "download";
+    private static final String STAGE_UPLOAD = "upload";
+
     @Resource
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
 
     @Resource
-    private Account adyenAccountService;
+    private AdyenDocumentUploader adyenDocumentUploader;
+
+    @Resource
+    private AccountHolderService accountHolderService;
+
+    @Resource
+    private MiraklShopService miraklShopService;
 
     @Resource
     private DeltaService deltaService;
@@ -98,6 +113,9 @@ public class DocService {
     @Resource
     private ApplicationProperties applicationProperties;
 
+    @Resource
+    private Executor documentPipelineExecutor;
+
     @Value("${adyenConfig.environment}")
     private String environment;
 
@@ -113,20 +131,71 @@ public class DocService {
     }
 
     private void processDocs(final List<MiraklShopDocument> miraklShopDocumentList) {
+        final ImmutableList.Builder<DocumentDTO> documents = ImmutableList.builder();
         for (MiraklShopDocument document : miraklShopDocumentList) {
             if (Constants.BANKPROOF.equals(document.getTypeCode())) {
-                updateDocument(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT);
+                documents.add(documentDTO(document, DocumentDetail.DocumentTypeEnum.BANK_STATEMENT));
             }
             else if (Constants.COMPANY_REGISTRATION.equals(document.getTypeCode())) {
-                updateDocument(document, DocumentDetail.DocumentTypeEnum.COMPANY_REGISTRATION_SCREENING);
+                documents.add(documentDTO(document, DocumentDetail.DocumentTypeEnum.COMPANY_REGISTRATION_SCREENING));
+            }
+        }
+
+        final DocumentTypeResolver documentTypeResolver = DocumentTypeResolver.forDocuments(miraklShopDocumentList, miraklShopService);
+        documents.addAll(uboDocumentService.extractDocuments(miraklShopDocumentList, documentTypeResolver));
+        documents.addAll(individualDocumentService.extractDocuments(miraklShopDocumentList, documentTypeResolver));
+
+        updateDocuments(documents.build());
+    }
+
+    /**
+     * Download and upload the documents in parallel, documents of the same shop are downloaded in batches which are chained so they are uploaded in order
+     */
+    private void updateDocuments(final List<DocumentDTO> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final StageTimings timings = new StageTimings();
+        final Map<String, List<List<DocumentDTO>>> batchesByShopId = new LinkedHashMap<>();
+        for (DocumentDTO document : documents) {
+            addToBatch(batchesByShopId.computeIfAbsent(document.getMiraklShopDocument().getShopId(), shopId -> new ArrayList<>()), document);
+        }
+        final Map<String, CompletableFuture<Void>> uploadsByShopId = new LinkedHashMap<>();
+        batchesByShopId.forEach((shopId, batches) -> {
+            for (List<DocumentDTO> batch : batches) {
+                final Runnable upload = () -> updateDocumentBatch(batch, timings);
+                uploadsByShopId.compute(shopId, (id, previousUpload) -> previousUpload == null
+                    ? CompletableFuture.runAsync(upload, documentPipelineExecutor)
+                    : previousUpload.thenRunAsync(upload, documentPipelineExecutor));
             }
+        });
+        CompletableFuture.allOf(uploadsByShopId.values().toArray(new CompletableFuture[0])).join();
+        log.info("Processed {} documents in {} ms, time per stage: {}", documents.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS), timings);
+    }
+
+    /**
+     * Add the document to the last batch unless it is full or already holds a document with the same file name, zip entries are matched to documents by file name
+     */
+    private void addToBatch(final List<List<DocumentDTO>> batches, final DocumentDTO document) {
+        final List<DocumentDTO> lastBatch = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+        if (lastBatch == null || lastBatch.size() >= applicationProperties.getDocumentDownloadBatchSize() || lastBatch.stream()
+                                                                                                                     .anyMatch(batched -> Objects.equals(fileName(batched), fileName(document)))) {
+            batches.add(new ArrayList<>(ImmutableList.of(document)));
+        } else {
+            lastBatch.add(document);
         }
+    }
 
-        final List<UboDocumentDTO> uboDocumentDTOS = uboDocumentService.extractDocuments(miraklShopDocumentList);
-        uboDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), documentDTO.getShareholderCode()));
+    private static String fileName(final DocumentDTO document) {
+        return document.getMiraklShopDocument().getFileName();
+    }
 
-        final List<DocumentDTO> individualDocumentDTOS = individualDocumentService.extractDocuments(miraklShopDocumentList);
-        individualDocumentDTOS.forEach(documentDTO -> updateDocument(documentDTO.getMiraklShopDocument(), documentDTO.getDocumentTypeEnum(), null));
+    private static DocumentDTO documentDTO(final MiraklShopDocument document, final DocumentDetail.DocumentTypeEnum type) {
+        final DocumentDTO documentDTO = new DocumentDTO();
+        documentDTO.setMiraklShopDocument(document);
+        documentDTO.setDocumentTypeEnum(type);
+        return documentDTO;
     }
 
     @Async
@@ -153,10 +222,61 @@ public class DocService {
         processDocs(filteredShopDocuments);
     }
 
-    private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type, String shareholderCode) {
-        FileWrapper fileWrapper = downloadSelectedDocument(document);
+    /**
+     * A single document is downloaded as is, several documents are returned by Mirakl as a zip which is read entry by entry, each entry being streamed to Adyen
+     */
+    private void updateDocumentBatch(final List<DocumentDTO> batch, final StageTimings timings) {
+        final FileWrapper fileWrapper;
+        try {
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            fileWrapper = downloadSelectedDocuments(batch);
+            timings.record(STAGE_DOWNLOAD, stopwatch);
+        } catch (Exception e) {
+            log.error("Exception: {}, {}. While downloading documents of the Shop: {}", e.getMessage(), e, batch.get(0).getMiraklShopDocument().getShopId());
+            batch.forEach(document -> storeDocumentForRetry(document.getMiraklShopDocument().getId(), document.getMiraklShopDocument().getShopId(), e.toString()));
+            return;
+        }
+
+        if (batch.size() == 1) {
+            final DocumentDTO document = batch.get(0);
+            try (InputStream content = new FileInputStream(fileWrapper.getFile())) {
+                updateDocument(document, fileWrapper.getFilename(), content, fileWrapper.getFile().length(), timings);
+            } catch (IOException e) {
+                log.error("Cannot read document: {}, {}. For the Shop: {}", document.getMiraklShopDocument().getId(), e, document.getMiraklShopDocument().getShopId());
+                storeDocumentForRetry(document.getMiraklShopDocument().getId(), document.getMiraklShopDocument().getShopId(), e.toString());
+            }
+            return;
+        }
+
+        final Map<String, DocumentDTO> documentsByFileName = batch.stream().collect(Collectors.toMap(DocService::fileName, document -> document));
+        try (ZipInputStream archive = new ZipInputStream(new FileInputStream(fileWrapper.getFile()))) {
+            ZipEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final String entryFileName = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+                final DocumentDTO document = documentsByFileName.remove(entryFileName);
+                if (document == null) {
+                    log.warn("Ignoring unexpected entry {} in the documents archive {}", entry.getName(), fileWrapper.getFilename());
+                    continue;
+                }
+                updateDocument(document, entryFileName, archive, entry.getSize(), timings);
+            }
+        } catch (IOException e) {
+            log.error("Cannot read documents archive: {}, {}", fileWrapper.getFilename(), e);
+        }
+        documentsByFileName.values().forEach(document -> {
+            log.error("Document {} was not uploaded from the documents archive. For the Shop: {}", document.getMiraklShopDocument().getId(), document.getMiraklShopDocument().getShopId());
+            storeDocumentForRetry(document.getMiraklShopDocument().getId(), document.getMiraklShopDocument().getShopId(), "Document not found in the archive downloaded from Mirakl");
+        });
+    }
+
+    private void updateDocument(final DocumentDTO documentDTO, final String fileName, final InputStream content, final long contentSize, final StageTimings timings) {
+        final MiraklShopDocument document = documentDTO.getMiraklShopDocument();
+        final String shareholderCode = documentDTO instanceof UboDocumentDTO ? ((UboDocumentDTO) documentDTO).getShareholderCode() : null;
         try {
-            uploadDocumentToAdyen(type, fileWrapper, document.getShopId(), shareholderCode);
+            uploadDocumentToAdyen(documentDTO.getDocumentTypeEnum(), fileName, content, contentSize, document.getShopId(), shareholderCode, timings);
             docRetryRepository.findOneByDocId(document.getId()).ifPresent(docRetry -> {
                 docErrorRepository.delete(docRetry.getDocErrors());
                 docRetryRepository.delete(docRetry.getId());
@@ -190,10 +310,6 @@ public class DocService {
         docErrorRepository.saveAndFlush(docError);
     }
 
-    private void updateDocument(final MiraklShopDocument document, DocumentDetail.DocumentTypeEnum type) {
-        updateDocument(document, type, null);
-    }
-
     /**
      * Retrieve documents from Mirakl(S30)
      */
@@ -206,33 +322,23 @@ public class DocService {
     }
 
     /**
-     * Download one document from Mirakl(S31), it will always be a single document, this prevents mirakl from returning a zip file, which is not supported on Adyen
+     * Download documents from Mirakl(S31), a single document is returned as is, several documents are returned as a zip file
      */
-    private FileWrapper downloadSelectedDocument(MiraklShopDocument document) {
+    private FileWrapper downloadSelectedDocuments(List<DocumentDTO> documents) {
         MiraklDownloadShopsDocumentsRequest request = new MiraklDownloadShopsDocumentsRequest();
-        List<String> documentIds = new ArrayList<>();
-        documentIds.add(document.getId());
-        request.setDocumentIds(documentIds);
+        request.setDocumentIds(documents.stream().map(document -> document.getMiraklShopDocument().getId()).collect(Collectors.toList()));
         return miraklMarketplacePlatformOperatorApiClient.downloadShopsDocuments(request);
     }
 
     /**
-     * Encode document retrieved from Mirakl in Base64 and push it to Adyen, if the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
+     * Stream document retrieved from Mirakl to Adyen, encoded in Base64 on the fly, if the document type is BANK_STATEMENT/adyen-bankproof, a bank account is needed
      */
-    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, FileWrapper fileWrapper, String shopId, String shareholderCode) throws Exception {
-        UploadDocumentRequest request = new UploadDocumentRequest();
-
+    private void uploadDocumentToAdyen(DocumentDetail.DocumentTypeEnum documentType, String fileName, InputStream content, long contentSize, String shopId, String shareholderCode, StageTimings timings) throws Exception {
         DocumentDetail documentDetail = new DocumentDetail();
         documentDetail.setAccountHolderCode(shopId);
         documentDetail.setShareholderCode(shareholderCode);
         documentDetail.setDocumentType(documentType);
-        documentDetail.setFilename(fileWrapper.getFilename());
-
-        //Encode file Base64
-        byte[] bytes = toByteArray(fileWrapper.getFile());
-        Base64.Encoder encoder = Base64.getEncoder();
-        String encoded = encoder.encodeToString(bytes);
-        request.setDocumentContent(encoded);
+        documentDetail.setFilename(fileName);
 
         //If document is a bank statement, the bankaccountUUID is required
         if (documentType.equals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT)) {
@@ -249,8 +355,10 @@ public class DocService {
             documentDetail.setDescription("PASSED");
         }
 
-        request.setDocumentDetail(documentDetail);
-        UploadDocumentResponse response = adyenAccountService.uploadDocument(request);
+        //Encoding happens while uploading, the content is never held in memory
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        UploadDocumentResponse response = adyenDocumentUploader.uploadDocument(documentDetail, content, contentSize);
+        timings.record(STAGE_UPLOAD, stopwatch);
         log.debug("Account holder code: {}", shareholderCode);
         log.debug("Shop ID: {}", shopId);
         log.debug("DocumentType: {}", documentType);
@@ -258,16 +366,10 @@ public class DocService {
     }
 
     /**
-     * Call to Adyen to retrieve the (first)bankaccountUUID
+     * Retrieve the (first)bankaccountUUID, from the bank accounts indexed during the shop sync or else from Adyen
      */
     private String retrieveBankAccountUUID(String shopID) throws Exception {
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(shopID);
-        GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
-        if (! getAccountHolderResponse.getAccountHolderDetails().getBankAccountDetails().isEmpty()) {
-            return getAccountHolderResponse.getAccountHolderDetails().getBankAccountDetails().get(0).getBankAccountUUID();
-        }
-        return null;
+        return accountHolderService.getBankAccountUUID(shopID);
     }
 
     public void removeMiraklMediaForShareHolder(final String shareHolderCode) {
@@ -0,0 +1,84 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import com.adyen.mirakl.service.util.PhotoIdTypeCodes;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
+
+/**
+ * Photo id types of the ubos and individuals of the shops of one sync run, all shops referenced by the photo id documents are retrieved up front
+ * so every lookup is answered from memory, shared by the {@link UboDocumentService} and {@link IndividualDocumentService}
+ */
+public class DocumentTypeResolver {
+
+    private final Map<String, MiraklShop> shopsById;
+    private final ConcurrentMap<String, Optional<String>> documentTypes = new ConcurrentHashMap<>();
+
+    public DocumentTypeResolver(final Map<String, MiraklShop> shopsById) {
+        this.shopsById = shopsById;
+    }
+
+    /**
+     * Retrieve the shops referenced by the photo id documents in one go
+     */
+    public static DocumentTypeResolver forDocuments(final List<MiraklShopDocument> miraklShopDocuments, final MiraklShopService miraklShopService) {
+        final Set<String> shopIds = miraklShopDocuments.stream().filter(DocumentTypeResolver::isPhotoId).map(MiraklShopDocument::getShopId).collect(Collectors.toCollection(LinkedHashSet::new));
+        return new DocumentTypeResolver(miraklShopService.getShops(shopIds));
+    }
+
+    /**
+     * @return the photo id type selected on the shop for the entity e.g. ubo1 or individual, null if none was selected
+     */
+    public String getDocumentType(final String shopId, final String entityName) {
+        return documentTypes.computeIfAbsent(shopId + "_" + entityName, key -> Optional.ofNullable(shopsById.get(shopId)).flatMap(shop -> photoIdType(shop, entityName))).orElse(null);
+    }
+
+    private static Optional<String> photoIdType(final MiraklShop shop, final String entityName) {
+        final String code = PhotoIdTypeCodes.ADYEN_PREFIX + entityName + PhotoIdTypeCodes.SUFFIX_MIRAKL_PHOTOIDTYPE;
+        return shop.getAdditionalFieldValues()
+                   .stream()
+                   .filter(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::isInstance)
+                   .map(MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue.class::cast)
+                   .filter(x -> code.equalsIgnoreCase(x.getCode()))
+                   .findAny()
+                   .map(MiraklAdditionalFieldValue.MiraklAbstractAdditionalFieldWithSingleValue::getValue);
+    }
+
+    private static boolean isPhotoId(final MiraklShopDocument miraklShopDocument) {
+        final String typeCode = miraklShopDocument.getTypeCode() == null ? "" : miraklShopDocument.getTypeCode().toLowerCase(Locale.ROOT);
+        return typeCode.startsWith(PhotoIdTypeCodes.ADYEN_PREFIX)
+               && (typeCode.endsWith(PhotoIdTypeCodes.SUFFIX_MIRAKL_PHOTOID) || typeCode.endsWith(PhotoIdTypeCodes.SUFFIX_MIRAKL_PHOTOID_REAR));
+    }
+}
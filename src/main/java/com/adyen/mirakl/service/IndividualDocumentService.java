@@ -21,11 +21,10 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import org.springframework.stereotype.Service;
 import com.adyen.mirakl.service.dto.DocumentDTO;
+import com.adyen.mirakl.service.util.PhotoIdTypeCodes;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -35,14 +34,11 @@ public class IndividualDocumentService extends AbstractDocumentService<DocumentD
 
     private static final String INDIVIDUAL_ENTITY = "individual";
 
-    @Override
-    public List<DocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<DocumentDTO> builder = ImmutableList.builder();
-
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, INDIVIDUAL_ENTITY, null));
+    private static final PhotoIdTypeCodes PHOTO_ID_TYPE_CODES = PhotoIdTypeCodes.of(INDIVIDUAL_ENTITY);
 
-        return builder.build();
+    @Override
+    PhotoIdTypeCodes getPhotoIdTypeCodes() {
+        return PHOTO_ID_TYPE_CODES;
     }
 
     @Override
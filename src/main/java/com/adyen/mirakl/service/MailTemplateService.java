@@ -27,18 +27,13 @@ import com.adyen.mirakl.config.MiraklOperatorConfiguration;
 import com.adyen.model.Amount;
 import com.adyen.model.Name;
 import com.adyen.model.marketpay.Message;
-import com.google.common.collect.ImmutableList;
 import com.mirakl.client.domain.common.error.ErrorBean;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
-import com.mirakl.client.mmp.domain.shop.MiraklShops;
-import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
-import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 import io.github.jhipster.config.JHipsterProperties;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring4.SpringTemplateEngine;
 
@@ -81,7 +76,7 @@ public class MailTemplateService {
     private MiraklOperatorConfiguration miraklOperatorConfiguration;
 
     @Resource
-    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    private MiraklShopService miraklShopService;
 
     public MailTemplateService(final JHipsterProperties jHipsterProperties,
                                MailService mailService,
@@ -215,15 +210,7 @@ public class MailTemplateService {
     }
 
     private MiraklShop getShop(String shopId) {
-        MiraklGetShopsRequest request = new MiraklGetShopsRequest();
-        request.setShopIds(ImmutableList.of(shopId));
-        MiraklShops shops = miraklMarketplacePlatformOperatorApiClient.getShops(request);
-
-        if (CollectionUtils.isEmpty(shops.getShops())) {
-            throw new IllegalStateException("Cannot find shop: " + shopId);
-        }
-
-        return shops.getShops().iterator().next();
+        return miraklShopService.getShop(shopId);
     }
 
     private String getMiraklShopUrl(String miraklShopId) {
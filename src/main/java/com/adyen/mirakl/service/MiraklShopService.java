@@ -0,0 +1,133 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+
+/**
+ * Read-through cache of Mirakl shops, concurrent lookups of the same shop share a single call to Mirakl
+ * and misses for different shops are batched together by the {@link MiraklShopBatchLoader}
+ */
+@Service
+public class MiraklShopService {
+
+    public static final String MIRAKL_SHOP_CACHE = "miraklShops";
+
+    private final Logger log = LoggerFactory.getLogger(MiraklShopService.class);
+
+    private final MiraklShopBatchLoader miraklShopBatchLoader;
+    private final CacheManager cacheManager;
+
+    private final ConcurrentMap<String, CompletableFuture<MiraklShop>> pendingLookups = new ConcurrentHashMap<>();
+
+    public MiraklShopService(final MiraklShopBatchLoader miraklShopBatchLoader, final CacheManager cacheManager) {
+        this.miraklShopBatchLoader = miraklShopBatchLoader;
+        this.cacheManager = cacheManager;
+    }
+
+    public MiraklShop getShop(final String shopId) {
+        final MiraklShop cached = getCache().get(shopId, MiraklShop.class);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CompletableFuture<MiraklShop> lookup = new CompletableFuture<>();
+        final CompletableFuture<MiraklShop> pendingLookup = pendingLookups.putIfAbsent(shopId, lookup);
+        if (pendingLookup != null) {
+            log.debug("Waiting for pending lookup of shop: {}", shopId);
+            return join(pendingLookup);
+        }
+
+        try {
+            final MiraklShop shop = miraklShopBatchLoader.load(shopId);
+            getCache().put(shopId, shop);
+            lookup.complete(shop);
+            return shop;
+        } catch (RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingLookups.remove(shopId, lookup);
+        }
+    }
+
+    /**
+     * Look up several shops at once, the shops missing from the cache are retrieved together, shops which cannot be found are left out
+     */
+    public Map<String, MiraklShop> getShops(final Collection<String> shopIds) {
+        final Map<String, MiraklShop> shopsById = new HashMap<>();
+        final Set<String> missingShopIds = new LinkedHashSet<>();
+        for (String shopId : shopIds) {
+            final MiraklShop cached = getCache().get(shopId, MiraklShop.class);
+            if (cached != null) {
+                shopsById.put(shopId, cached);
+            } else {
+                missingShopIds.add(shopId);
+            }
+        }
+        if (! missingShopIds.isEmpty()) {
+            final Map<String, MiraklShop> loadedShops = miraklShopBatchLoader.loadAll(missingShopIds);
+            refresh(loadedShops.values());
+            shopsById.putAll(loadedShops);
+        }
+        return shopsById;
+    }
+
+    /**
+     * Replace the cached shops with shops freshly retrieved from Mirakl
+     */
+    public void refresh(final Collection<MiraklShop> shops) {
+        shops.stream().filter(shop -> shop.getId() != null).forEach(shop -> getCache().put(shop.getId(), shop));
+    }
+
+    private static MiraklShop join(final CompletableFuture<MiraklShop> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private Cache getCache() {
+        return cacheManager.getCache(MIRAKL_SHOP_CACHE);
+    }
+}
@@ -23,7 +23,23 @@
 package com.adyen.mirakl.service;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import javax.annotation.Resource;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -31,23 +47,26 @@ import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import com.adyen.util.Util;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
 import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.adyen.mirakl.service.util.CommissionTotals;
 import com.adyen.model.Amount;
 import com.adyen.model.marketpay.BankAccountDetail;
-import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.PayoutAccountHolderRequest;
 import com.adyen.model.marketpay.PayoutAccountHolderResponse;
 import com.adyen.model.marketpay.TransferFundsRequest;
 import com.adyen.model.marketpay.TransferFundsResponse;
-import com.adyen.service.Account;
 import com.adyen.service.Fund;
 import com.adyen.service.exception.ApiException;
 import com.google.gson.Gson;
@@ -59,7 +78,7 @@ public class PayoutService {
     private final Logger log = LoggerFactory.getLogger(PayoutService.class);
 
     @Resource
-    private Account adyenAccountService;
+    private AccountHolderService accountHolderService;
 
     @Resource
     private Fund adyenFundService;
@@ -70,6 +89,15 @@ public class PayoutService {
     @Resource
     private MiraklVoucherEntryRepository miraklVoucherEntryRepository;
 
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    @Resource
+    private ApplicationProperties applicationProperties;
+
+    @Resource
+    private Executor payoutExecutor;
+
     @Value("${payoutService.subscriptionTransferCode}")
     private String subscriptionTransferCode;
 
@@ -81,63 +109,248 @@ public class PayoutService {
 
     protected final static Gson GSON = new Gson();
 
+    private static final String INSERT_VOUCHER_ENTRY = "INSERT INTO mirakl_voucher_entry (created_at, updated_at, shop_id, transfer_amount, currency_iso_code, iban, invoice_number, shop_name, "
+                                                       + "subscription_amount, total_charged_amount, total_charged_amount_vat) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-    public void parseMiraklCsv(String csvData) throws IOException {
-        Iterable<CSVRecord> records = CSVParser.parse(csvData, CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';'));
-        for (CSVRecord record : records) {
-            MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
-
-            miraklVoucherEntry.setShopId(record.get("shop-id"));
-            miraklVoucherEntry.setTransferAmount(record.get("transfer-amount"));
-            miraklVoucherEntry.setCurrencyIsoCode(record.get("currency-iso-code"));
-            miraklVoucherEntry.setIban(record.get("payment-info-ibantype-iban"));
-            miraklVoucherEntry.setInvoiceNumber(record.get("invoice-number"));
-            miraklVoucherEntry.setShopName(record.get("shop-name"));
-            miraklVoucherEntry.setSubscriptionAmount(record.get("subscription-amount"));
-            miraklVoucherEntry.setTotalChargedAmount(record.get("total-charged-amount"));
-            miraklVoucherEntry.setTotalChargedAmountVat(record.get("total-charged-amount-vat"));
-            miraklVoucherEntryRepository.save(miraklVoucherEntry);
+
+    /**
+     * Stores the voucher entries of a Mirakl payment voucher file, the file is read record by record and the entries are inserted in batches
+     * of voucherEntryBatchSize so memory use does not depend on the size of the file
+     *
+     * @return the number of voucher entries stored
+     */
+    public int parseMiraklCsv(Reader csvData) throws IOException {
+        final int batchSize = applicationProperties.getVoucherEntryBatchSize();
+        final List<MiraklVoucherEntry> batch = new ArrayList<>(batchSize);
+        int stored = 0;
+        try (CSVParser records = CSVFormat.DEFAULT.withFirstRecordAsHeader().withDelimiter(';').parse(csvData)) {
+            for (CSVRecord record : records) {
+                MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry();
+
+                miraklVoucherEntry.setShopId(record.get("shop-id"));
+                miraklVoucherEntry.setTransferAmount(record.get("transfer-amount"));
+                miraklVoucherEntry.setCurrencyIsoCode(record.get("currency-iso-code"));
+                miraklVoucherEntry.setIban(record.get("payment-info-ibantype-iban"));
+                miraklVoucherEntry.setInvoiceNumber(record.get("invoice-number"));
+                miraklVoucherEntry.setShopName(record.get("shop-name"));
+                miraklVoucherEntry.setSubscriptionAmount(record.get("subscription-amount"));
+                miraklVoucherEntry.setTotalChargedAmount(record.get("total-charged-amount"));
+                miraklVoucherEntry.setTotalChargedAmountVat(record.get("total-charged-amount-vat"));
+                batch.add(miraklVoucherEntry);
+
+                if (batch.size() >= batchSize) {
+                    stored += insertMiraklVoucherEntries(batch);
+                }
+            }
         }
+        stored += insertMiraklVoucherEntries(batch);
+        log.info("Stored {} voucher entries", stored);
+        return stored;
+    }
 
-        miraklVoucherEntryRepository.flush();
+    private int insertMiraklVoucherEntries(final List<MiraklVoucherEntry> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        final Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_VOUCHER_ENTRY, batch, batch.size(), (statement, miraklVoucherEntry) -> {
+            statement.setTimestamp(1, now);
+            statement.setTimestamp(2, now);
+            statement.setString(3, miraklVoucherEntry.getShopId());
+            statement.setString(4, miraklVoucherEntry.getTransferAmount());
+            statement.setString(5, miraklVoucherEntry.getCurrencyIsoCode());
+            statement.setString(6, miraklVoucherEntry.getIban());
+            statement.setString(7, miraklVoucherEntry.getInvoiceNumber());
+            statement.setString(8, miraklVoucherEntry.getShopName());
+            statement.setString(9, miraklVoucherEntry.getSubscriptionAmount());
+            statement.setString(10, miraklVoucherEntry.getTotalChargedAmount());
+            statement.setString(11, miraklVoucherEntry.getTotalChargedAmountVat());
+        });
+        final int inserted = batch.size();
+        batch.clear();
+        return inserted;
     }
 
+    /**
+     * Pays out the voucher entries no other payout run holds, payoutChunkSize entries at a time: a chunk is leased to this run for
+     * payoutLeaseMinutes and paid out by payoutThreads workers. The entries of the same shop are paid out one after the other. The lease of
+     * every entry is renewed right before it is paid out, entries another run took over in the meantime are left to that run. Every entry
+     * is marked as processed right after its payout. Once the chunk is done the commission charged on its entries is paid out to the liable
+     * account once per currency, then the processed entries of the chunk are deleted in a single statement. Several runs, also of other
+     * connector instances, can drain the table at the same time. Entries left unpaid by an interrupted run are taken over by a later run once
+     * their lease expires, the commission of the entries it paid out is paid out by that later run
+     */
     @Async
-    public synchronized void processMiraklVoucherEntries() {
-        List<MiraklVoucherEntry> miraklVoucherEntries = miraklVoucherEntryRepository.findAll();
-        if (! payoutToLiableAccountByVoucher) {
-            for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
-                processMiraklVoucherEntry(miraklVoucherEntry);
-                miraklVoucherEntryRepository.delete(miraklVoucherEntry);
-                miraklVoucherEntryRepository.flush();
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void processMiraklVoucherEntries() {
+        final String payoutRun = UUID.randomUUID().toString();
+        final long start = System.nanoTime();
+        int processed = 0;
+
+        settleInterruptedPayoutRuns(payoutRun);
+        List<MiraklVoucherEntry> miraklVoucherEntries;
+        while (!(miraklVoucherEntries = claimMiraklVoucherEntries(payoutRun)).isEmpty()) {
+            final List<MiraklVoucherEntry> paidOut = processMiraklVoucherEntries(payoutRun, miraklVoucherEntries);
+            processCommissions(paidOut);
+            miraklVoucherEntryRepository.deleteProcessedClaimedBy(payoutRun);
+            processed += paidOut.size();
+            log.debug("Processed chunk of {} vouchers", paidOut.size());
+        }
+        if (processed == 0) {
+            return;
+        }
+
+        final long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("Processed {} vouchers in {} ms ({} per minute)", processed, elapsedMillis, processed * TimeUnit.MINUTES.toMillis(1) / elapsedMillis);
+    }
+
+    /**
+     * Pays out the commission of the entries an interrupted run paid out but could not delete, once the lease of that run has expired
+     */
+    private void settleInterruptedPayoutRuns(final String payoutRun) {
+        final ZonedDateTime now = ZonedDateTime.now();
+        if (miraklVoucherEntryRepository.claimProcessed(payoutRun, now.plusMinutes(applicationProperties.getPayoutLeaseMinutes()), now) == 0) {
+            return;
+        }
+        final List<MiraklVoucherEntry> paidOut = miraklVoucherEntryRepository.findByClaimedByAndProcessedTrueOrderByIdAsc(payoutRun);
+        log.warn("Settling {} vouchers paid out by an interrupted payout run", paidOut.size());
+        processCommissions(paidOut);
+        miraklVoucherEntryRepository.deleteProcessedClaimedBy(payoutRun);
+    }
+
+    /**
+     * Pays out the commission charged on the entries to the liable account, once per currency
+     */
+    private void processCommissions(final List<MiraklVoucherEntry> paidOut) {
+        if (!payoutToLiableAccountByVoucher) {
+            return;
+        }
+        final CommissionTotals commissionTotals = new CommissionTotals();
+        for (MiraklVoucherEntry miraklVoucherEntry : paidOut) {
+            try {
+                commissionTotals.add(miraklVoucherEntry.getCurrencyIsoCode(), miraklVoucherEntry.getTotalChargedAmount(), miraklVoucherEntry.getTotalChargedAmountVat());
+            } catch (IllegalArgumentException e) {
+                log.error("total_charged_amount ["
+                              + miraklVoucherEntry.getTotalChargedAmount()
+                              + "] or total_charged_amount_vat ["
+                              + miraklVoucherEntry.getTotalChargedAmountVat()
+                              + "] or currency_iso_code ["
+                              + miraklVoucherEntry.getCurrencyIsoCode()
+                              + "]  is not valid hence skipping addition of this voucher entry in commission payout"
+                              + e.getMessage());
+            }
+        }
+        commissionTotals.getTotalByCurrency().forEach((currency, total) -> processCommissions(Util.createAmount(total.toPlainString(), currency)));
+    }
+
+    /**
+     * Leases the next payoutChunkSize free entries to the payout run, when another run claims the same entries first the next free ones are
+     * tried
+     *
+     * @return the entries leased, empty once no entries are left
+     */
+    private List<MiraklVoucherEntry> claimMiraklVoucherEntries(final String payoutRun) {
+        final PageRequest chunk = new PageRequest(0, applicationProperties.getPayoutChunkSize());
+        while (true) {
+            final ZonedDateTime now = ZonedDateTime.now();
+            final List<Long> ids = miraklVoucherEntryRepository.findClaimableIds(now, chunk);
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if (miraklVoucherEntryRepository.claim(payoutRun, now.plusMinutes(applicationProperties.getPayoutLeaseMinutes()), now, ids) > 0) {
+                return miraklVoucherEntryRepository.findByClaimedByOrderByIdAsc(payoutRun);
             }
-        } else {
-            Double totalCommissionAmount = null;
-            String commissionPayoutCurrency = null;
-            //get the commission currency from first voucher entry
-            if (miraklVoucherEntries != null && miraklVoucherEntries.size() > 0) {
-                commissionPayoutCurrency = miraklVoucherEntries.get(0).getCurrencyIsoCode();
-                totalCommissionAmount = new Double(0);
-
-                for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
-                    processMiraklVoucherEntry(miraklVoucherEntry);
-                    try {
-                        totalCommissionAmount = totalCommissionAmount
-                                + Double.parseDouble(miraklVoucherEntry.getTotalChargedAmount())
-                                + Double.parseDouble(miraklVoucherEntry.getTotalChargedAmountVat());
-                    } catch (NumberFormatException e) {
-                        log.error("total_charged_amount ["
-                                          + miraklVoucherEntry.getTotalChargedAmount()
-                                          + "] or total_charged_amount_vat ["
-                                          + miraklVoucherEntry.getTotalChargedAmountVat()
-                                          + "]  is not a valid number hence skipping addition of this voucher entry in commission payout"
-                                          + e.getMessage());
-                    }
-                    miraklVoucherEntryRepository.delete(miraklVoucherEntry);
-                    miraklVoucherEntryRepository.flush();
+        }
+    }
+
+    /**
+     * Pays out the entries in parallel, the entries of the same shop are chained so they are paid out in order. The account holders of the
+     * shops are resolved up front, once per shop
+     *
+     * @return the entries paid out by this run, in the order of the chunk
+     */
+    private List<MiraklVoucherEntry> processMiraklVoucherEntries(final String payoutRun, final List<MiraklVoucherEntry> miraklVoucherEntries) {
+        final Map<String, PayoutAccountHolder> accountHoldersByShopId = prefetchAccountHolders(miraklVoucherEntries);
+        final Set<Long> paidOutIds = ConcurrentHashMap.newKeySet();
+        final Map<String, CompletableFuture<Void>> tasksByShopId = new LinkedHashMap<>();
+        for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
+            final PayoutAccountHolder accountHolder = accountHoldersByShopId.get(miraklVoucherEntry.getShopId());
+            final Runnable payout = () -> {
+                if (processClaimedMiraklVoucherEntry(payoutRun, miraklVoucherEntry, accountHolder)) {
+                    paidOutIds.add(miraklVoucherEntry.getId());
                 }
-                processCommissions(Util.createAmount(totalCommissionAmount.toString(), commissionPayoutCurrency));
+            };
+            tasksByShopId.compute(String.valueOf(miraklVoucherEntry.getShopId()), (shopId, previousTask) -> previousTask == null
+                ? CompletableFuture.runAsync(payout, payoutExecutor)
+                : previousTask.thenRunAsync(payout, payoutExecutor));
+        }
+        CompletableFuture.allOf(tasksByShopId.values().toArray(new CompletableFuture[0])).join();
+        return miraklVoucherEntries.stream().filter(miraklVoucherEntry -> paidOutIds.contains(miraklVoucherEntry.getId())).collect(Collectors.toList());
+    }
+
+    /**
+     * Renews the lease of the entry, pays it out and marks it as processed, the entry is skipped when another payout run took it over
+     * since it was claimed. Failed payouts are marked as well, the ones which can be retried are stored as AdyenPayoutError. Any other
+     * failure is logged, so a single entry cannot stop the payout run
+     *
+     * @return whether the entry was paid out by this run
+     */
+    private boolean processClaimedMiraklVoucherEntry(final String payoutRun, final MiraklVoucherEntry miraklVoucherEntry, final PayoutAccountHolder accountHolder) {
+        try {
+            final ZonedDateTime claimedUntil = ZonedDateTime.now().plusMinutes(applicationProperties.getPayoutLeaseMinutes());
+            if (miraklVoucherEntryRepository.renewClaim(miraklVoucherEntry.getId(), payoutRun, claimedUntil) == 0) {
+                log.warn("Voucher entry {} with invoice number {} is no longer leased to payout run {}, skipping it", miraklVoucherEntry.getId(), miraklVoucherEntry.getInvoiceNumber(), payoutRun);
+                return false;
             }
+        } catch (Exception e) {
+            log.error("Could not renew the lease of voucher entry {}, it is left to a later payout run: {}", miraklVoucherEntry.getId(), e.getMessage(), e);
+            return false;
+        }
+        try {
+            processMiraklVoucherEntry(miraklVoucherEntry, accountHolder);
+        } catch (Exception e) {
+            log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, miraklVoucherEntry.getShopId());
+        }
+        try {
+            miraklVoucherEntryRepository.markProcessed(miraklVoucherEntry.getId());
+        } catch (Exception e) {
+            log.error("Voucher entry {} with invoice number {} was paid out but could not be marked as processed: {}", miraklVoucherEntry.getId(), miraklVoucherEntry.getInvoiceNumber(), e.getMessage(), e);
+        }
+        return true;
+    }
+
+    /**
+     * Resolves the account holders of the distinct shops of the entries concurrently, on the payoutThreads workers
+     *
+     * @return the account holders by shopId, shops whose account holder could not be resolved are left out and looked up again per entry
+     */
+    private Map<String, PayoutAccountHolder> prefetchAccountHolders(final List<MiraklVoucherEntry> miraklVoucherEntries) {
+        final Map<String, CompletableFuture<PayoutAccountHolder>> prefetchesByShopId = new HashMap<>();
+        for (MiraklVoucherEntry miraklVoucherEntry : miraklVoucherEntries) {
+            if (miraklVoucherEntry.getShopId() != null) {
+                prefetchesByShopId.computeIfAbsent(miraklVoucherEntry.getShopId(),
+                                                   shopId -> CompletableFuture.supplyAsync(() -> prefetchAccountHolder(shopId), payoutExecutor));
+            }
+        }
+        CompletableFuture.allOf(prefetchesByShopId.values().toArray(new CompletableFuture[0])).join();
+
+        final Map<String, PayoutAccountHolder> accountHoldersByShopId = new HashMap<>();
+        prefetchesByShopId.forEach((shopId, prefetch) -> {
+            final PayoutAccountHolder accountHolder = prefetch.join();
+            if (accountHolder != null) {
+                accountHoldersByShopId.put(shopId, accountHolder);
+            }
+        });
+        log.debug("Prefetched {} of {} account holders", accountHoldersByShopId.size(), prefetchesByShopId.size());
+        return accountHoldersByShopId;
+    }
+
+    private PayoutAccountHolder prefetchAccountHolder(final String shopId) {
+        try {
+            return new PayoutAccountHolder(getAccountHolderResponse(shopId));
+        } catch (Exception e) {
+            log.warn("Could not prefetch the account holder of the Shop: {}, {}", shopId, e.getMessage());
+            return null;
         }
     }
 
@@ -160,6 +373,13 @@ public class PayoutService {
     }
 
     public void processMiraklVoucherEntry(MiraklVoucherEntry miraklVoucherEntry) {
+        processMiraklVoucherEntry(miraklVoucherEntry, null);
+    }
+
+    /**
+     * @param prefetchedAccountHolder the account holder of the shop resolved for the chunk, looked up when null
+     */
+    private void processMiraklVoucherEntry(MiraklVoucherEntry miraklVoucherEntry, PayoutAccountHolder prefetchedAccountHolder) {
         String accountHolderCode = miraklVoucherEntry.getShopId();
 
         PayoutAccountHolderRequest payoutAccountHolderRequest = null;
@@ -168,12 +388,14 @@ public class PayoutService {
 
         try {
             //Call Adyen to retrieve the accountCode from the accountHolderCode
-            GetAccountHolderResponse accountHolderResponse = getAccountHolderResponse(accountHolderCode);
+            PayoutAccountHolder accountHolder = prefetchedAccountHolder != null
+                ? prefetchedAccountHolder
+                : new PayoutAccountHolder(getAccountHolderResponse(accountHolderCode));
 
-            payoutAccountHolderRequest = createPayoutAccountHolderRequest(accountHolderResponse, miraklVoucherEntry);
+            payoutAccountHolderRequest = createPayoutAccountHolderRequest(accountHolder, miraklVoucherEntry);
 
             if (miraklVoucherEntry.hasSubscription()) {
-                transferFundsRequest = createTransferFundsSubscription(accountHolderResponse, miraklVoucherEntry);
+                transferFundsRequest = createTransferFundsSubscription(accountHolder, miraklVoucherEntry);
                 TransferFundsResponse transferFundsResponse = adyenFundService.transferFunds(transferFundsRequest);
                 log.info("Subscription submitted for accountHolder: [{}] + Response: [{}]", accountHolderCode, transferFundsResponse);
                 transferFundsRequest = null;
@@ -224,9 +446,7 @@ public class PayoutService {
     protected PayoutAccountHolderRequest createPayoutAccountHolderRequestForLiableAccount(Amount amount) throws Exception {
 
         //Call Adyen to retrieve the accountCode from the accountHolderCode
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountCode(liableAccountCode);
-        GetAccountHolderResponse accountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+        GetAccountHolderResponse accountHolderResponse = accountHolderService.getAccountHolderByAccountCode(liableAccountCode);
         PayoutAccountHolderRequest payoutAccountHolderRequest = new PayoutAccountHolderRequest();
 
         if (accountHolderResponse != null) {
@@ -239,11 +459,16 @@ public class PayoutService {
     }
 
     protected PayoutAccountHolderRequest createPayoutAccountHolderRequest(GetAccountHolderResponse accountHolderResponse, MiraklVoucherEntry miraklVoucherEntry) throws Exception {
+        return createPayoutAccountHolderRequest(new PayoutAccountHolder(accountHolderResponse), miraklVoucherEntry);
+    }
+
+    private PayoutAccountHolderRequest createPayoutAccountHolderRequest(PayoutAccountHolder accountHolder, MiraklVoucherEntry miraklVoucherEntry) {
+        GetAccountHolderResponse accountHolderResponse = accountHolder.getAccountHolderResponse();
 
         //Retrieve the bankAccountUUID from Adyen matching to the iban provided from Mirakl
-        String bankAccountUUID = getBankAccountUUID(accountHolderResponse, miraklVoucherEntry.getIban());
+        String bankAccountUUID = accountHolder.getBankAccountUUID(miraklVoucherEntry.getIban());
         PayoutAccountHolderRequest payoutAccountHolderRequest = new PayoutAccountHolderRequest();
-        payoutAccountHolderRequest.setAccountCode(getAccountCode(accountHolderResponse));
+        payoutAccountHolderRequest.setAccountCode(accountHolder.getAccountCode());
         payoutAccountHolderRequest.setBankAccountUUID(bankAccountUUID);
         payoutAccountHolderRequest.setAccountHolderCode(accountHolderResponse.getAccountHolderCode());
         // make sure that you start with the invoiceNumber because long shopper statements could be stripped off
@@ -263,36 +488,25 @@ public class PayoutService {
     }
 
     protected GetAccountHolderResponse getAccountHolderResponse(String accountHolderCode) throws Exception {
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(accountHolderCode);
-        return adyenAccountService.getAccountHolder(getAccountHolderRequest);
-    }
-
-    private String getAccountCode(GetAccountHolderResponse accountHolderResponse) {
-        return accountHolderResponse.getAccounts().get(0).getAccountCode();
+        return accountHolderService.getAccountHolder(accountHolderCode);
     }
 
     protected String getBankAccountUUID(GetAccountHolderResponse accountHolderResponse, String iban) {
-        //Iban Check
-        List<BankAccountDetail> bankAccountDetailList = accountHolderResponse.getAccountHolderDetails().getBankAccountDetails();
-        if (! bankAccountDetailList.isEmpty()) {
-            for (BankAccountDetail bankAccountDetail : bankAccountDetailList) {
-                if (bankAccountDetail.getIban().equals(iban)) {
-                    return bankAccountDetail.getBankAccountUUID();
-                }
-            }
-        }
-        throw new IllegalStateException("No matching Iban between Mirakl and Adyen platforms.");
+        return new PayoutAccountHolder(accountHolderResponse).getBankAccountUUID(iban);
     }
 
     protected TransferFundsRequest createTransferFundsSubscription(GetAccountHolderResponse accountHolderResponse, MiraklVoucherEntry miraklVoucherEntry) throws Exception {
+        return createTransferFundsSubscription(new PayoutAccountHolder(accountHolderResponse), miraklVoucherEntry);
+    }
+
+    private TransferFundsRequest createTransferFundsSubscription(PayoutAccountHolder accountHolder, MiraklVoucherEntry miraklVoucherEntry) {
 
         TransferFundsRequest transferFundsRequest = new TransferFundsRequest();
         Amount adyenAmount = Util.createAmount(miraklVoucherEntry.getSubscriptionAmount(), miraklVoucherEntry.getCurrencyIsoCode());
 
         transferFundsRequest.setAmount(adyenAmount);
 
-        transferFundsRequest.setSourceAccountCode(getAccountCode(accountHolderResponse));
+        transferFundsRequest.setSourceAccountCode(accountHolder.getAccountCode());
         transferFundsRequest.setDestinationAccountCode(liableAccountCode);
 
         transferFundsRequest.setTransferCode(subscriptionTransferCode);
@@ -303,4 +517,38 @@ public class PayoutService {
         // Exception case: if Adyen responds with HTTP 500 (Internal Server Error), never retry the payout; Adyen will retry internally automatically.
         return apiException.getStatusCode() != 500;
     }
+
+    /**
+     * Account holder of a shop with its bank accounts indexed by IBAN, shared by the entries of the shop
+     */
+    private static final class PayoutAccountHolder {
+
+        private final GetAccountHolderResponse accountHolderResponse;
+        private final Map<String, String> bankAccountUUIDsByIban = new HashMap<>();
+
+        private PayoutAccountHolder(final GetAccountHolderResponse accountHolderResponse) {
+            this.accountHolderResponse = accountHolderResponse;
+            for (BankAccountDetail bankAccountDetail : accountHolderResponse.getAccountHolderDetails().getBankAccountDetails()) {
+                if (bankAccountDetail.getIban() != null) {
+                    bankAccountUUIDsByIban.putIfAbsent(bankAccountDetail.getIban(), bankAccountDetail.getBankAccountUUID());
+                }
+            }
+        }
+
+        private GetAccountHolderResponse getAccountHolderResponse() {
+            return accountHolderResponse;
+        }
+
+        private String getAccountCode() {
+            return accountHolderResponse.getAccounts().get(0).getAccountCode();
+        }
+
+        private String getBankAccountUUID(final String iban) {
+            final String bankAccountUUID = bankAccountUUIDsByIban.get(iban);
+            if (bankAccountUUID == null) {
+                throw new IllegalStateException("No matching Iban between Mirakl and Adyen platforms.");
+            }
+            return bankAccountUUID;
+        }
+    }
 }
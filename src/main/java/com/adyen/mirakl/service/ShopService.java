@@ -24,11 +24,17 @@ package com.adyen.mirakl.service;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
@@ -40,12 +46,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklDelta;
 import com.adyen.mirakl.domain.StreetDetails;
 import com.adyen.mirakl.service.util.IsoUtil;
 import com.adyen.mirakl.service.util.MiraklDataExtractionUtil;
+import com.adyen.mirakl.service.util.MiraklShopPageIterator;
 import com.adyen.mirakl.startup.MiraklStartupValidator;
 import com.adyen.model.Address;
 import com.adyen.model.Amount;
@@ -59,7 +68,6 @@ import com.adyen.model.marketpay.CreateAccountHolderResponse;
 import com.adyen.model.marketpay.DeleteBankAccountRequest;
 import com.adyen.model.marketpay.DeleteBankAccountResponse;
 import com.adyen.model.marketpay.ErrorFieldType;
-import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.IndividualDetails;
 import com.adyen.model.marketpay.PersonalData;
@@ -79,6 +87,7 @@ import com.mirakl.client.mmp.domain.shop.bank.MiraklPaymentInformation;
 import com.mirakl.client.mmp.domain.shop.bank.MiraklUkBankAccountInformation;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreateManualAccountingDocument;
+import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreatedManualAccountingDocumentReturn;
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklCreatedManualAccountingDocuments;
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklManualAccountingDocumentLine;
 import com.mirakl.client.mmp.operator.domain.invoice.MiraklManualAccountingDocumentType;
@@ -100,6 +109,12 @@ public class ShopService {
     @Resource
     private Account adyenAccountService;
 
+    @Resource
+    private AccountHolderService accountHolderService;
+
+    @Resource
+    private MiraklShopService miraklShopService;
+
     @Resource
     private DeltaService deltaService;
 
@@ -118,38 +133,90 @@ public class ShopService {
     @Resource
     private DocService docService;
 
+    @Resource
+    private Executor shopSyncExecutor;
+
+    @Resource(name = "taskExecutor")
+    private Executor miraklPrefetchExecutor;
+
+    @Resource
+    private Executor accountLookupExecutor;
+
     @Value("${payoutService.liableAccountCode}")
     private String liableAccountCode;
 
     @Value("${miraklOperator.miraklTimeZone}")
     private String miraklTimeZone;
 
+    /**
+     * Pulls the updated shops from Mirakl page by page, each page is pushed to Adyen while the next one is downloaded
+     * A checkpoint is stored after every page, if the previous run was interrupted it resumes from its checkpoint
+     * and keeps its original end of window so shops updated in the meantime are picked up by the next run
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void processUpdatedShops() {
-        final ZonedDateTime beforeProcessing = ZonedDateTime.now();
+        final Optional<MiraklDelta> checkpoint = deltaService.getShopCheckpoint();
+        final ZonedDateTime beforeProcessing = checkpoint.map(MiraklDelta::getShopCheckpointDelta).orElse(ZonedDateTime.now());
+        final int startOffset = checkpoint.map(MiraklDelta::getShopCheckpointOffset).orElse(0);
+        if (startOffset > 0) {
+            log.info("Resuming shop sync from checkpoint offset: {}", startOffset);
+        }
 
-        List<MiraklShop> shops = getUpdatedShops();
-        log.debug("Retrieved shops: {}", shops.size());
-        for (MiraklShop shop : shops) {
-            try {
-                GetAccountHolderResponse getAccountHolderResponse = getAccountHolderFromShop(shop);
-                if (getAccountHolderResponse != null) {
-                    processUpdateAccountHolder(shop, getAccountHolderResponse);
-                } else {
-                    processCreateAccountHolder(shop);
-                }
-            } catch (ApiException e) {
-                log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, shop.getId());
-            } catch (Exception e) {
-                log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, shop.getId());
+        accountHolderService.clearBankAccounts();
+        int processedShops = 0;
+        final MiraklShopPageIterator pages = streamUpdatedShops(startOffset);
+        while (pages.hasNext()) {
+            final List<MiraklShop> shops = pages.next();
+            miraklShopService.refresh(shops);
+            final Set<String> shopIds = processShops(shops);
+            shopIds.forEach(shopId -> docService.retryDocumentsForShop(shopId));
+            processedShops += shops.size();
+            if (pages.hasNext()) {
+                deltaService.updateShopCheckpoint(pages.getOffset(), beforeProcessing);
             }
         }
-        shops.forEach(shop -> docService.retryDocumentsForShop(shop.getId()));
+        log.debug("Processed shops: {}", processedShops);
+
         deltaService.updateShopDelta(beforeProcessing);
     }
 
+    /**
+     * Process the shops in parallel, updates for the same shop are chained so they are pushed in order
+     *
+     * @return the ids of the processed shops
+     */
+    private Set<String> processShops(final List<MiraklShop> shops) {
+        final Map<String, CompletableFuture<Void>> tasksByShopId = new LinkedHashMap<>();
+        for (MiraklShop shop : shops) {
+            tasksByShopId.compute(shop.getId(), (shopId, previousTask) -> previousTask == null
+                ? CompletableFuture.runAsync(() -> processUpdatedShop(shop), shopSyncExecutor)
+                : previousTask.thenRunAsync(() -> processUpdatedShop(shop), shopSyncExecutor));
+        }
+        CompletableFuture.allOf(tasksByShopId.values().toArray(new CompletableFuture[0])).join();
+        return tasksByShopId.keySet();
+    }
+
+    private void processUpdatedShop(final MiraklShop shop) {
+        try {
+            GetAccountHolderResponse getAccountHolderResponse = getAccountHolderFromShop(shop);
+            if (getAccountHolderResponse != null) {
+                processUpdateAccountHolder(shop, getAccountHolderResponse);
+            } else {
+                processCreateAccountHolder(shop);
+            }
+        } catch (ApiException e) {
+            log.error("MarketPay Api Exception: {}, {}. For the Shop: {}", e.getError(), e, shop.getId());
+        } catch (Exception e) {
+            log.error("Exception: {}, {}. For the Shop: {}", e.getMessage(), e, shop.getId());
+        } finally {
+            accountHolderService.evict(shop.getId());
+        }
+    }
+
     private void processCreateAccountHolder(final MiraklShop shop) throws Exception {
         CreateAccountHolderRequest createAccountHolderRequest = createAccountHolderRequestFromShop(shop);
         CreateAccountHolderResponse response = adyenAccountService.createAccountHolder(createAccountHolderRequest);
+        accountHolderService.indexBankAccount(shop.getId(), response.getAccountHolderDetails());
         shareholderMappingService.updateShareholderMapping(response, shop);
         log.debug("CreateAccountHolderResponse: {}", response);
         if (! CollectionUtils.isEmpty(response.getInvalidFields())) {
@@ -163,6 +230,7 @@ public class ShopService {
         UpdateAccountHolderRequest updateAccountHolderRequest = updateAccountHolderRequestFromShop(shop, getAccountHolderResponse);
 
         UpdateAccountHolderResponse response = adyenAccountService.updateAccountHolder(updateAccountHolderRequest);
+        accountHolderService.indexBankAccount(shop.getId(), response.getAccountHolderDetails());
         shareholderMappingService.updateShareholderMapping(response, shop);
         log.debug("UpdateAccountHolderResponse: {}", response);
 
@@ -192,6 +260,7 @@ public class ShopService {
 
         if (! uuids.isEmpty()) {
             DeleteBankAccountResponse deleteBankAccountResponse = adyenAccountService.deleteBankAccount(deleteBankAccountRequest(getAccountHolderResponse.getAccountHolderCode(), uuids));
+            accountHolderService.evictBankAccount(getAccountHolderResponse.getAccountHolderCode());
             log.debug("DeleteBankAccountResponse: {}", deleteBankAccountResponse);
         }
 
@@ -209,25 +278,20 @@ public class ShopService {
         return deleteBankAccountRequest;
     }
 
-    public List<MiraklShop> getUpdatedShops() {
-        int offset = 0;
-        Long totalCount = 1L;
-        List<MiraklShop> shops = new ArrayList<>();
-
-        while (offset < totalCount) {
-            MiraklGetShopsRequest miraklGetShopsRequest = new MiraklGetShopsRequest();
-            miraklGetShopsRequest.setOffset(offset);
-
-            miraklGetShopsRequest.setUpdatedSince(deltaService.getShopDelta());
-            log.debug("getShops request since: " + miraklGetShopsRequest.getUpdatedSince());
-            MiraklShops miraklShops = miraklMarketplacePlatformOperatorApiClient.getShops(miraklGetShopsRequest);
-            shops.addAll(miraklShops.getShops());
-
-            totalCount = miraklShops.getTotalCount();
-            offset += miraklShops.getShops().size();
-        }
+    /**
+     * Stream the updated shops page by page from startOffset, only the page being processed and the one being downloaded are kept in memory
+     */
+    MiraklShopPageIterator streamUpdatedShops(final int startOffset) {
+        final Date updatedSince = deltaService.getShopDelta();
+        log.debug("getShops request since: " + updatedSince);
+        return new MiraklShopPageIterator(offset -> getShopsPage(updatedSince, offset), miraklPrefetchExecutor, startOffset);
+    }
 
-        return shops;
+    private MiraklShops getShopsPage(final Date updatedSince, final int offset) {
+        MiraklGetShopsRequest miraklGetShopsRequest = new MiraklGetShopsRequest();
+        miraklGetShopsRequest.setOffset(offset);
+        miraklGetShopsRequest.setUpdatedSince(updatedSince);
+        return miraklMarketplacePlatformOperatorApiClient.getShops(miraklGetShopsRequest);
     }
 
     private CreateAccountHolderRequest createAccountHolderRequestFromShop(MiraklShop shop) {
@@ -355,11 +419,8 @@ public class ShopService {
      */
     private GetAccountHolderResponse getAccountHolderFromShop(MiraklShop shop) throws Exception {
         // lookup accountHolder in Adyen
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountHolderCode(shop.getId());
-
         try {
-            GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+            GetAccountHolderResponse getAccountHolderResponse = accountHolderService.getAccountHolder(shop.getId());
             if (! getAccountHolderResponse.getAccountHolderCode().isEmpty()) {
                 return getAccountHolderResponse;
             }
@@ -579,15 +640,76 @@ public class ShopService {
         this.houseNumberPatterns = houseNumberPatterns;
     }
 
+    public void setShopSyncExecutor(final Executor shopSyncExecutor) {
+        this.shopSyncExecutor = shopSyncExecutor;
+    }
+
+    public void setMiraklPrefetchExecutor(final Executor miraklPrefetchExecutor) {
+        this.miraklPrefetchExecutor = miraklPrefetchExecutor;
+    }
+
+    public void setAccountLookupExecutor(final Executor accountLookupExecutor) {
+        this.accountLookupExecutor = accountLookupExecutor;
+    }
+
+    public void setAccountHolderService(final AccountHolderService accountHolderService) {
+        this.accountHolderService = accountHolderService;
+    }
+
+    public void setMiraklShopService(final MiraklShopService miraklShopService) {
+        this.miraklShopService = miraklShopService;
+    }
+
     /**
-     * IV03: Create a manual accounting document
+     * IV03: Create the manual accounting documents compensating the negative balances
+     * The shops of the records are looked up concurrently, then the documents are sent in batches of manualAccountingDocumentBatchSize,
+     * Mirakl returns the result of every document in the order of the request
+     *
+     * @return the result of every record, in the order of the records, null for the records whose document could not be sent
      */
-    public MiraklCreatedManualAccountingDocuments processCompensateNegativeBalance(CompensateNegativeBalanceNotificationRecord compensateNegativeBalanceNotificationRecord,
-                                                                                   String pspReference) throws Exception {
+    public List<MiraklCreatedManualAccountingDocumentReturn> processCompensateNegativeBalance(List<CompensateNegativeBalanceNotificationRecord> compensateNegativeBalanceNotificationRecords,
+                                                                                          String pspReference) {
+        final Map<String, CompletableFuture<String>> shopIdsByAccountCode = new HashMap<>();
+        compensateNegativeBalanceNotificationRecords.forEach(record -> shopIdsByAccountCode.computeIfAbsent(record.getAccountCode(),
+                                                                                                           accountCode -> CompletableFuture.supplyAsync(() -> retrieveShopIdFromAccountCode(accountCode),
+                                                                                                                                                        accountLookupExecutor)));
+
+        final List<MiraklCreatedManualAccountingDocumentReturn> results = new ArrayList<>(Collections.nCopies(compensateNegativeBalanceNotificationRecords.size(), null));
+        final List<Integer> recordIndexes = new ArrayList<>();
+        final List<MiraklCreateManualAccountingDocument> documents = new ArrayList<>();
+        for (int i = 0; i < compensateNegativeBalanceNotificationRecords.size(); i++) {
+            final CompensateNegativeBalanceNotificationRecord record = compensateNegativeBalanceNotificationRecords.get(i);
+            final String shopId = shopIdsByAccountCode.get(record.getAccountCode()).join();
+            if (shopId == null) {
+                log.error("No shop found for the account: {}, negative balance with pspReference: {} is not compensated", record.getAccountCode(), pspReference);
+                continue;
+            }
+            recordIndexes.add(i);
+            documents.add(createManualAccountingDocument(record, shopId, pspReference));
+        }
+
+        final int batchSize = applicationProperties.getManualAccountingDocumentBatchSize();
+        for (int from = 0; from < documents.size(); from += batchSize) {
+            final int to = Math.min(from + batchSize, documents.size());
+            try {
+                final MiraklCreatedManualAccountingDocuments created = miraklMarketplacePlatformOperatorApiClient.createManualAccountingDocument(new MiraklCreateManualAccountingDocumentRequest(documents.subList(from, to)));
+                final List<MiraklCreatedManualAccountingDocumentReturn> returns = created.getManualAccountingDocumentReturns();
+                for (int i = 0; i < returns.size() && from + i < to; i++) {
+                    results.set(recordIndexes.get(from + i), returns.get(i));
+                }
+            } catch (Exception e) {
+                log.error("Could not create {} manual accounting documents for pspReference: {}: {}", to - from, pspReference, e.getMessage(), e);
+            }
+        }
+        return results;
+    }
+
+    private MiraklCreateManualAccountingDocument createManualAccountingDocument(CompensateNegativeBalanceNotificationRecord compensateNegativeBalanceNotificationRecord,
+                                                                                String shopId,
+                                                                                String pspReference) {
         final String accountCode = compensateNegativeBalanceNotificationRecord.getAccountCode();
         Amount amount = compensateNegativeBalanceNotificationRecord.getAmount();
         Date transferDate = compensateNegativeBalanceNotificationRecord.getTransferDate();
-        String shopId = retrieveShopIdFromAccountCode(accountCode);
 
         MiraklCreateManualAccountingDocument miraklCreateManualAccountingDocument = new MiraklCreateManualAccountingDocument();
         miraklCreateManualAccountingDocument.setEmissionDate(transferDate);
@@ -606,20 +728,12 @@ public class ShopService {
 
         miraklCreateManualAccountingDocument.setShopId(Long.valueOf(shopId));
         miraklCreateManualAccountingDocument.setType(MiraklManualAccountingDocumentType.CREDIT);
-
-        List<MiraklCreateManualAccountingDocument> miraklCreateManualAccountingDocumentList = new ArrayList<>();
-        miraklCreateManualAccountingDocumentList.add(miraklCreateManualAccountingDocument);
-
-        MiraklCreateManualAccountingDocumentRequest request = new MiraklCreateManualAccountingDocumentRequest(miraklCreateManualAccountingDocumentList);
-
-        return miraklMarketplacePlatformOperatorApiClient.createManualAccountingDocument(request);
+        return miraklCreateManualAccountingDocument;
     }
 
     protected String retrieveShopIdFromAccountCode(String accountCode) {
-        GetAccountHolderRequest getAccountHolderRequest = new GetAccountHolderRequest();
-        getAccountHolderRequest.setAccountCode(accountCode);
         try {
-            GetAccountHolderResponse getAccountHolderResponse = adyenAccountService.getAccountHolder(getAccountHolderRequest);
+            GetAccountHolderResponse getAccountHolderResponse = accountHolderService.getAccountHolderByAccountCode(accountCode);
             if (! getAccountHolderResponse.getAccountHolderCode().isEmpty()) {
                 return getAccountHolderResponse.getAccountHolderCode();
             }
@@ -21,10 +21,9 @@
 
 package com.adyen.mirakl.service;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +36,7 @@ import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.PhotoIdTypeCodes;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
@@ -60,18 +60,16 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
     @Value("${shopService.maxUbos}")
     private Integer maxUbos = 4;
 
-    @Override
-    public List<UboDocumentDTO> extractDocuments(List<MiraklShopDocument> miraklShopDocuments) {
-        ImmutableList.Builder<UboDocumentDTO> builder = ImmutableList.builder();
+    private PhotoIdTypeCodes photoIdTypeCodes = PhotoIdTypeCodes.of(UBO_ENTITY, maxUbos);
 
-        Map<String, String> internalMemoryForDocs = new HashMap<>();
-        miraklShopDocuments.forEach(miraklShopDocument -> {
-            for (Integer uboNumber = 1; uboNumber <= maxUbos; uboNumber++) {
-                addToBuilder(builder, internalMemoryForDocs, miraklShopDocument, UBO_ENTITY, uboNumber);
-            }
-        });
+    @PostConstruct
+    public void init() {
+        photoIdTypeCodes = PhotoIdTypeCodes.of(UBO_ENTITY, maxUbos);
+    }
 
-        return builder.build();
+    @Override
+    PhotoIdTypeCodes getPhotoIdTypeCodes() {
+        return photoIdTypeCodes;
     }
 
     @Override
@@ -95,6 +93,7 @@ public class UboDocumentService extends AbstractDocumentService<UboDocumentDTO>
 
     public void setMaxUbos(Integer maxUbos) {
         this.maxUbos = maxUbos;
+        this.photoIdTypeCodes = PhotoIdTypeCodes.of(UBO_ENTITY, maxUbos);
     }
 
     private void storeDocumentForRetry(String documentId, String shopId) {
@@ -0,0 +1,316 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.adyen.mirakl.domain.AdyenNotification;
+
+/**
+ * Group commit of the notifications received from Adyen: concurrent appends are collected for up to maxWaitMillis (or until the batch is full)
+ * and written with one batched INSERT in a single transaction, every caller returns once the batch is committed
+ * The first caller opens a batch and writes it, like the {@link MiraklShopBatchLoader}
+ * Adyen sends a notification again when it is not acknowledged in time, the unique dedupe key of each notification is stored in the same
+ * transaction so a copy is detected even when the original was already processed and deleted
+ */
+public class AdyenNotificationBatchWriter {
+
+    private static final String INSERT_DEDUPE_KEY = "INSERT INTO adyen_notification_dedupe (dedupe_key, created_at) VALUES (?, ?)";
+    private static final String DELETE_DEDUPE_KEYS = "DELETE FROM adyen_notification_dedupe WHERE created_at < ?";
+    private static final String INSERT_NOTIFICATION = "INSERT INTO adyen_notification (raw_adyen_notification, processed, created_at, attempts, event_type, account_holder_code, "
+                                                      + "dispatched_until, dispatched_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(AdyenNotificationBatchWriter.class);
+
+    private final DataSource dataSource;
+    private final int maxBatchSize;
+    private final long maxWaitMillis;
+
+    private final Object lock = new Object();
+    private List<PendingNotification> openBatch;
+
+    // not every driver returns the keys of all the rows of a batch, rows are then inserted one by one, still in a single transaction
+    private volatile boolean batchGeneratedKeys = true;
+
+    public AdyenNotificationBatchWriter(final DataSource dataSource, final int maxBatchSize, final long maxWaitMillis) {
+        this.dataSource = dataSource;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Durably store the notification
+     *
+     * @param adyenNotification the notification to store with its lease, its id is not set
+     * @param dedupeKey         key identifying the notification across retries from Adyen, null if the notification cannot be deduplicated
+     * @return the id of the stored notification, or null when a notification with the same dedupe key was already stored
+     */
+    public Long append(final AdyenNotification adyenNotification, final String dedupeKey) {
+        final List<PendingNotification> batch;
+        final PendingNotification notification = new PendingNotification(adyenNotification, dedupeKey);
+        final boolean leader;
+        synchronized (lock) {
+            leader = openBatch == null;
+            if (leader) {
+                openBatch = new ArrayList<>();
+            }
+            batch = openBatch;
+            batch.add(notification);
+            if (batch.size() >= maxBatchSize) {
+                openBatch = null;
+                lock.notifyAll();
+            }
+        }
+
+        if (leader) {
+            awaitBatch(batch);
+            write(batch);
+        }
+        return join(notification.id);
+    }
+
+    private void awaitBatch(final List<PendingNotification> batch) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        synchronized (lock) {
+            long remaining = deadline - System.nanoTime();
+            while (openBatch == batch && remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+        }
+    }
+
+    /**
+     * Remove the dedupe keys of the notifications stored before the given time, copies of those notifications are not detected anymore
+     *
+     * @return the number of dedupe keys removed
+     */
+    public int removeDedupeKeysCreatedBefore(final Instant createdBefore) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_DEDUPE_KEYS)) {
+            statement.setTimestamp(1, Timestamp.from(createdBefore));
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not remove notification dedupe keys", e);
+        }
+    }
+
+    private void write(final List<PendingNotification> batch) {
+        log.debug("Storing {} notifications", batch.size());
+        try (Connection connection = dataSource.getConnection()) {
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                final List<PendingNotification> notifications = claimDedupeKeys(connection, batch);
+                final List<Long> ids = insert(connection, notifications);
+                connection.commit();
+                for (int i = 0; i < notifications.size(); i++) {
+                    notifications.get(i).id.complete(ids.get(i));
+                }
+                batch.forEach(notification -> notification.id.complete(null));
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.error("Could not store {} notifications: {}", batch.size(), e.getMessage(), e);
+            final IllegalStateException failure = new IllegalStateException("Could not store notification", e);
+            batch.forEach(notification -> notification.id.completeExceptionally(failure));
+        }
+    }
+
+    /**
+     * Store the dedupe keys of the batch, a key already stored (or appearing twice in the batch) marks the notification as a duplicate
+     *
+     * @return the notifications of the batch which are not duplicates
+     */
+    private List<PendingNotification> claimDedupeKeys(final Connection connection, final List<PendingNotification> batch) throws SQLException {
+        final Set<String> dedupeKeys = new HashSet<>();
+        final List<PendingNotification> notifications = new ArrayList<>();
+        final List<PendingNotification> keyed = new ArrayList<>();
+        for (PendingNotification notification : batch) {
+            if (notification.dedupeKey == null) {
+                notifications.add(notification);
+            } else if (dedupeKeys.add(notification.dedupeKey)) {
+                notifications.add(notification);
+                keyed.add(notification);
+            }
+        }
+        if (keyed.isEmpty()) {
+            return notifications;
+        }
+
+        final Savepoint beforeDedupeKeys = connection.setSavepoint();
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_DEDUPE_KEY)) {
+            for (PendingNotification notification : keyed) {
+                bindDedupeKey(statement, notification);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            return notifications;
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e)) {
+                throw e;
+            }
+            connection.rollback(beforeDedupeKeys);
+        }
+
+        // the batch contains copies of notifications stored before, find them one by one
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_DEDUPE_KEY)) {
+            for (PendingNotification notification : keyed) {
+                final Savepoint beforeDedupeKey = connection.setSavepoint();
+                try {
+                    bindDedupeKey(statement, notification);
+                    statement.executeUpdate();
+                } catch (SQLException e) {
+                    if (!isDuplicateKey(e)) {
+                        throw e;
+                    }
+                    connection.rollback(beforeDedupeKey);
+                    log.info("Notification {} was already received", notification.dedupeKey);
+                    notifications.remove(notification);
+                }
+            }
+        }
+        return notifications;
+    }
+
+    private List<Long> insert(final Connection connection, final List<PendingNotification> batch) throws SQLException {
+        if (batchGeneratedKeys && batch.size() > 1) {
+            final Savepoint beforeNotifications = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_NOTIFICATION, Statement.RETURN_GENERATED_KEYS)) {
+                for (PendingNotification notification : batch) {
+                    bind(statement, notification);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                final List<Long> ids = generatedKeys(statement);
+                if (ids.size() == batch.size()) {
+                    return ids;
+                }
+            }
+            log.info("The database driver does not return the generated keys of a batch, notifications are now inserted one by one");
+            batchGeneratedKeys = false;
+            connection.rollback(beforeNotifications);
+        }
+
+        final List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_NOTIFICATION, Statement.RETURN_GENERATED_KEYS)) {
+            for (PendingNotification notification : batch) {
+                bind(statement, notification);
+                statement.executeUpdate();
+                ids.addAll(generatedKeys(statement));
+            }
+        }
+        return ids;
+    }
+
+    private static boolean isDuplicateKey(final SQLException e) {
+        for (SQLException exception = e; exception != null; exception = exception.getNextException()) {
+            if (exception instanceof SQLIntegrityConstraintViolationException || (exception.getSQLState() != null && exception.getSQLState().startsWith("23"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void bindDedupeKey(final PreparedStatement statement, final PendingNotification notification) throws SQLException {
+        statement.setString(1, notification.dedupeKey);
+        statement.setTimestamp(2, notification.createdAt);
+    }
+
+    private static void bind(final PreparedStatement statement, final PendingNotification notification) throws SQLException {
+        statement.setString(1, notification.adyenNotification.getRawAdyenNotification());
+        statement.setBoolean(2, false);
+        statement.setTimestamp(3, notification.createdAt);
+        statement.setInt(4, 0);
+        statement.setString(5, notification.adyenNotification.getEventType());
+        statement.setString(6, notification.adyenNotification.getAccountHolderCode());
+        final ZonedDateTime dispatchedUntil = notification.adyenNotification.getDispatchedUntil();
+        statement.setTimestamp(7, dispatchedUntil == null ? null : Timestamp.from(dispatchedUntil.toInstant()));
+        statement.setString(8, notification.adyenNotification.getDispatchedBy());
+    }
+
+    private static List<Long> generatedKeys(final Statement statement) throws SQLException {
+        final List<Long> ids = new ArrayList<>();
+        try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+            while (generatedKeys.next()) {
+                ids.add(generatedKeys.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    private static Long join(final CompletableFuture<Long> id) {
+        try {
+            return id.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class PendingNotification {
+
+        private final AdyenNotification adyenNotification;
+        private final String dedupeKey;
+        private final Timestamp createdAt = Timestamp.from(Instant.now());
+        private final CompletableFuture<Long> id = new CompletableFuture<>();
+
+        PendingNotification(final AdyenNotification adyenNotification, final String dedupeKey) {
+            this.adyenNotification = adyenNotification;
+            this.dedupeKey = dedupeKey;
+        }
+    }
+}
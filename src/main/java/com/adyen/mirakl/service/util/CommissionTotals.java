@@ -0,0 +1,63 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Adds up the commission charged on voucher entries per currency, amounts are kept as exact decimals so no precision is lost however many
+ * entries are added
+ */
+public class CommissionTotals {
+
+    private final Map<String, BigDecimal> totalByCurrency = new LinkedHashMap<>();
+
+    /**
+     * @throws IllegalArgumentException when the currency is missing or an amount is not a valid number, the totals are then left unchanged
+     */
+    public void add(final String currency, final String totalChargedAmount, final String totalChargedAmountVat) {
+        if (StringUtils.isBlank(currency)) {
+            throw new IllegalArgumentException("Currency is missing");
+        }
+        final BigDecimal commission = parse(totalChargedAmount).add(parse(totalChargedAmountVat));
+        totalByCurrency.merge(currency, commission, BigDecimal::add);
+    }
+
+    /**
+     * @return the totals by currency, in the order the currencies were first added
+     */
+    public Map<String, BigDecimal> getTotalByCurrency() {
+        return Collections.unmodifiableMap(totalByCurrency);
+    }
+
+    private static BigDecimal parse(final String amount) {
+        if (amount == null) {
+            throw new NumberFormatException("Amount is missing");
+        }
+        return new BigDecimal(amount.trim());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+
+/**
+ * Groups single shop lookups from concurrent callers into one S20 call
+ * The first caller opens a batch and waits up to maxWaitMillis (or until the batch is full) for other lookups to join, then fetches all of them at once
+ */
+public class MiraklShopBatchLoader {
+
+    // S20 does not return more than 100 shops per call
+    private static final int MAX_SHOPS_PER_REQUEST = 100;
+
+    private final Logger log = LoggerFactory.getLogger(MiraklShopBatchLoader.class);
+
+    private final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient;
+    private final int maxBatchSize;
+    private final long maxWaitMillis;
+
+    private final Object lock = new Object();
+    private Map<String, CompletableFuture<MiraklShop>> openBatch;
+
+    public MiraklShopBatchLoader(final MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClient, final int maxBatchSize, final long maxWaitMillis) {
+        this.miraklMarketplacePlatformOperatorApiClient = miraklMarketplacePlatformOperatorApiClient;
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, MAX_SHOPS_PER_REQUEST));
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public MiraklShop load(final String shopId) {
+        final Map<String, CompletableFuture<MiraklShop>> batch;
+        final CompletableFuture<MiraklShop> lookup;
+        final boolean leader;
+        synchronized (lock) {
+            leader = openBatch == null;
+            if (leader) {
+                openBatch = new LinkedHashMap<>();
+            }
+            batch = openBatch;
+            lookup = batch.computeIfAbsent(shopId, id -> new CompletableFuture<>());
+            if (batch.size() >= maxBatchSize) {
+                openBatch = null;
+                lock.notifyAll();
+            }
+        }
+
+        if (leader) {
+            awaitBatch(batch);
+            fetch(batch);
+        }
+        return join(lookup);
+    }
+
+    /**
+     * Retrieve the given shops right away, with as few S20 calls as possible, shops which cannot be found are left out
+     */
+    public Map<String, MiraklShop> loadAll(final Collection<String> shopIds) {
+        final Map<String, MiraklShop> shopsById = new LinkedHashMap<>();
+        for (List<String> partition : Iterables.partition(shopIds, MAX_SHOPS_PER_REQUEST)) {
+            retrieveShops(partition).forEach(shop -> shopsById.put(shop.getId(), shop));
+        }
+        return shopsById;
+    }
+
+    private void awaitBatch(final Map<String, CompletableFuture<MiraklShop>> batch) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        synchronized (lock) {
+            long remaining = deadline - System.nanoTime();
+            while (openBatch == batch && remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+        }
+    }
+
+    private void fetch(final Map<String, CompletableFuture<MiraklShop>> batch) {
+        try {
+            retrieveShops(batch.keySet()).forEach(shop -> {
+                final CompletableFuture<MiraklShop> lookup = batch.get(shop.getId());
+                if (lookup != null) {
+                    lookup.complete(shop);
+                }
+            });
+            batch.forEach((shopId, lookup) -> lookup.completeExceptionally(new IllegalStateException("Cannot find shop: " + shopId)));
+        } catch (RuntimeException e) {
+            batch.values().forEach(lookup -> lookup.completeExceptionally(e));
+        }
+    }
+
+    private List<MiraklShop> retrieveShops(final Collection<String> shopIds) {
+        log.debug("Retrieving {} shops from Mirakl", shopIds.size());
+        MiraklGetShopsRequest request = new MiraklGetShopsRequest();
+        request.setShopIds(ImmutableList.copyOf(shopIds));
+        request.setMax(shopIds.size());
+        MiraklShops shops = miraklMarketplacePlatformOperatorApiClient.getShops(request);
+        return shops.getShops() != null ? shops.getShops() : ImmutableList.of();
+    }
+
+    private static MiraklShop join(final CompletableFuture<MiraklShop> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
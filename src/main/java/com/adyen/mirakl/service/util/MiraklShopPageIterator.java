@@ -0,0 +1,97 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+
+/**
+ * Iterates page by page over the shops returned by Mirakl (S20)
+ * The next page is requested as soon as the current one is handed out, so it is downloaded while the current page is processed
+ */
+public class MiraklShopPageIterator implements Iterator<List<MiraklShop>> {
+
+    private final IntFunction<MiraklShops> pageLoader;
+    private final Executor prefetchExecutor;
+
+    private CompletableFuture<MiraklShops> nextPage;
+    private int offset;
+
+    public MiraklShopPageIterator(final IntFunction<MiraklShops> pageLoader, final Executor prefetchExecutor) {
+        this(pageLoader, prefetchExecutor, 0);
+    }
+
+    public MiraklShopPageIterator(final IntFunction<MiraklShops> pageLoader, final Executor prefetchExecutor, final int startOffset) {
+        this.pageLoader = pageLoader;
+        this.prefetchExecutor = prefetchExecutor;
+        this.offset = startOffset;
+        this.nextPage = fetch(startOffset);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextPage != null;
+    }
+
+    @Override
+    public List<MiraklShop> next() {
+        if (nextPage == null) {
+            throw new NoSuchElementException();
+        }
+
+        final MiraklShops page = await(nextPage);
+        offset += page.getShops().size();
+        nextPage = ! page.getShops().isEmpty() && offset < page.getTotalCount() ? fetch(offset) : null;
+
+        return page.getShops();
+    }
+
+    /**
+     * Offset of the first shop of the page that will be returned next
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    private CompletableFuture<MiraklShops> fetch(final int pageOffset) {
+        return CompletableFuture.supplyAsync(() -> pageLoader.apply(pageOffset), prefetchExecutor);
+    }
+
+    private static MiraklShops await(CompletableFuture<MiraklShops> page) {
+        try {
+            return page.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
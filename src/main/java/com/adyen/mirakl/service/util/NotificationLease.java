@@ -0,0 +1,54 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+import com.adyen.mirakl.domain.AdyenNotification;
+
+/**
+ * Lease a stored notification holds while it is queued and handled, recovery does not hand a leased notification to the listener again
+ * Leases are taken on behalf of the current boot of the connector, so the startup recovery can take over the leases left by an earlier boot
+ */
+public class NotificationLease {
+
+    private final String owner = UUID.randomUUID().toString();
+
+    private final int leaseSeconds;
+
+    public NotificationLease(final int leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * @return the id of the current boot, stored with every lease it takes
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    public AdyenNotification take(final AdyenNotification adyenNotification) {
+        return adyenNotification.dispatchedBy(owner).dispatchedUntil(ZonedDateTime.now().plusSeconds(leaseSeconds));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Dispatch table from the Mirakl type codes of photo id documents e.g. adyen-ubo2-photoid-rear to the entity and side they hold,
+ * built once so classifying a document takes a single lookup
+ */
+public class PhotoIdTypeCodes {
+
+    public static final String ADYEN_PREFIX = "adyen-";
+    public static final String SUFFIX_MIRAKL_PHOTOID = "-photoid";
+    public static final String SUFFIX_MIRAKL_PHOTOID_REAR = "-photoid-rear";
+    public static final String SUFFIX_MIRAKL_PHOTOIDTYPE = "-photoidtype";
+
+    private final Map<String, PhotoIdTypeCode> typeCodes;
+
+    private PhotoIdTypeCodes(final Map<String, PhotoIdTypeCode> typeCodes) {
+        this.typeCodes = typeCodes;
+    }
+
+    /**
+     * Type codes of an entity without sequence e.g. individual
+     */
+    public static PhotoIdTypeCodes of(final String entityType) {
+        final ImmutableMap.Builder<String, PhotoIdTypeCode> builder = ImmutableMap.builder();
+        addTypeCodes(builder, entityType, null);
+        return new PhotoIdTypeCodes(builder.build());
+    }
+
+    /**
+     * Type codes of the entities numbered from 1 to maxSequence e.g. ubo1 to ubo4
+     */
+    public static PhotoIdTypeCodes of(final String entityType, final int maxSequence) {
+        final ImmutableMap.Builder<String, PhotoIdTypeCode> builder = ImmutableMap.builder();
+        for (int sequence = 1; sequence <= maxSequence; sequence++) {
+            addTypeCodes(builder, entityType, sequence);
+        }
+        return new PhotoIdTypeCodes(builder.build());
+    }
+
+    /**
+     * @return the entity and side of the photo id, null if the type code is not a photo id of these entities
+     */
+    public PhotoIdTypeCode classify(final String typeCode) {
+        return typeCode == null ? null : typeCodes.get(typeCode.toLowerCase(Locale.ROOT));
+    }
+
+    private static void addTypeCodes(final ImmutableMap.Builder<String, PhotoIdTypeCode> builder, final String entityType, final Integer entitySequence) {
+        final String entityName = entityType + Objects.toString(entitySequence, "");
+        builder.put((ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID).toLowerCase(Locale.ROOT), new PhotoIdTypeCode(entityName, entitySequence, false));
+        builder.put((ADYEN_PREFIX + entityName + SUFFIX_MIRAKL_PHOTOID_REAR).toLowerCase(Locale.ROOT), new PhotoIdTypeCode(entityName, entitySequence, true));
+    }
+
+    public static class PhotoIdTypeCode {
+
+        private final String entityName;
+        private final Integer entitySequence;
+        private final boolean rear;
+
+        PhotoIdTypeCode(final String entityName, final Integer entitySequence, final boolean rear) {
+            this.entityName = entityName;
+            this.entitySequence = entitySequence;
+            this.rear = rear;
+        }
+
+        public String getEntityName() {
+            return entityName;
+        }
+
+        public Integer getEntitySequence() {
+            return entitySequence;
+        }
+
+        public boolean isRear() {
+            return rear;
+        }
+    }
+}
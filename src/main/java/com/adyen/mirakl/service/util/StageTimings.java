@@ -0,0 +1,53 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import com.google.common.base.Stopwatch;
+
+/**
+ * Time spent per stage, summed over all workers of a run
+ */
+public class StageTimings {
+
+    private final Map<String, LongAdder> nanosByStage = new ConcurrentHashMap<>();
+
+    public void record(final String stage, final Stopwatch stopwatch) {
+        nanosByStage.computeIfAbsent(stage, key -> new LongAdder()).add(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+    }
+
+    public long getMillis(final String stage) {
+        final LongAdder nanos = nanosByStage.get(stage);
+        return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return nanosByStage.keySet().stream().sorted().map(stage -> stage + "=" + getMillis(stage) + "ms").collect(Collectors.joining(", "));
+    }
+}
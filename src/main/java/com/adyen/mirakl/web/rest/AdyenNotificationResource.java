@@ -26,15 +26,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import com.adyen.mirakl.domain.AdyenNotification;
-import com.adyen.mirakl.events.AdyenNotifcationEvent;
-import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.AdyenNotificationService;
 import com.adyen.mirakl.web.rest.util.HeaderUtil;
 
 /**
@@ -48,28 +46,31 @@ public class AdyenNotificationResource {
 
     private static final String ENTITY_NAME = "adyenNotification";
 
-    private final AdyenNotificationRepository adyenNotificationRepository;
+    private final AdyenNotificationService adyenNotificationService;
 
-    private final ApplicationEventPublisher publisher;
-
-    public AdyenNotificationResource(AdyenNotificationRepository adyenNotificationRepository, ApplicationEventPublisher publisher) {
-        this.adyenNotificationRepository = adyenNotificationRepository;
-        this.publisher = publisher;
+    public AdyenNotificationResource(AdyenNotificationService adyenNotificationService) {
+        this.adyenNotificationService = adyenNotificationService;
     }
 
     /**
      * POST  /adyen-notifications : Create a new adyenNotification.
      *
      * @param adyenNotification the adyenNotification to create
-     * @return the ResponseEntity with status 201 (Created) and with body the new adyenNotification, or with status 400 (Bad Request) if the adyenNotification has already an ID
+     * @return the ResponseEntity with status 201 (Created) and with body the new adyenNotification, with status 200 (OK) if the adyenNotification was already received,
+     * or with status 400 (Bad Request) if the adyenNotification is malformed
      * @throws URISyntaxException if the Location URI syntax is incorrect
      */
     @PostMapping("/adyen-notifications")
     public ResponseEntity<AdyenNotificationResponse> createAdyenNotification(@RequestBody String adyenNotification) throws URISyntaxException {
-        final AdyenNotification entity = new AdyenNotification();
-        entity.setRawAdyenNotification(adyenNotification);
-        AdyenNotification result = adyenNotificationRepository.save(entity);
-        publisher.publishEvent(new AdyenNotifcationEvent(result.getId()));
+        final AdyenNotification result;
+        try {
+            result = adyenNotificationService.ingest(adyenNotification);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert(ENTITY_NAME, "malformednotification", e.getMessage())).build();
+        }
+        if (result == null) {
+            return ResponseEntity.ok(new AdyenNotificationResponse());
+        }
 
         return ResponseEntity.created(new URI("/api/adyen-notifications/" + result.getId()))
                              .headers(HeaderUtil.createEntityCreationAlert(ENTITY_NAME, result.getId().toString()))
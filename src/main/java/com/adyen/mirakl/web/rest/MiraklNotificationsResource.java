@@ -23,6 +23,9 @@
 package com.adyen.mirakl.web.rest;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
@@ -48,9 +51,10 @@ public class MiraklNotificationsResource {
      */
     @PostMapping("/payout")
     public void receiveNotifications(@RequestPart("file") MultipartFile csvdata) throws IOException {
-        String content = new String(csvdata.getBytes());
-        if (! content.isEmpty()) {
-            payoutService.parseMiraklCsv(content);
+        if (! csvdata.isEmpty()) {
+            try (Reader reader = new InputStreamReader(csvdata.getInputStream(), StandardCharsets.UTF_8)) {
+                payoutService.parseMiraklCsv(reader);
+            }
             payoutService.processMiraklVoucherEntries();
         }
     }
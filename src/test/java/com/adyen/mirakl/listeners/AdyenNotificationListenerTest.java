@@ -22,22 +22,27 @@
 
 package com.adyen.mirakl.listeners;
 
+import com.adyen.mirakl.service.AccountHolderService;
 import com.adyen.mirakl.service.DocService;
 import com.adyen.mirakl.service.MailTemplateService;
+import com.adyen.mirakl.service.MiraklShopService;
 import com.adyen.mirakl.domain.AdyenNotification;
 import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
 import com.adyen.mirakl.service.RetryPayoutService;
 import com.adyen.mirakl.service.ShopService;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
 import com.adyen.model.Name;
 import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.ShareholderContact;
+import com.adyen.model.marketpay.notification.GenericNotification;
 import com.adyen.notification.NotificationHandler;
 import com.adyen.service.Account;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.mirakl.client.mmp.domain.shop.MiraklShop;
 import com.mirakl.client.mmp.domain.shop.MiraklShops;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
@@ -51,11 +56,18 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -64,6 +76,8 @@ public class AdyenNotificationListenerTest {
 
     private AdyenNotificationListener adyenNotificationListener;
 
+    private AccountHolderService accountHolderService;
+
     @Mock
     private AdyenNotificationRepository adyenNotificationRepositoryMock;
     @Mock
@@ -99,7 +113,8 @@ public class AdyenNotificationListenerTest {
 
     @Before
     public void setup(){
-        adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, miraklMarketplacePlatformOperatorApiClient, adyenAccountServiceMock, retryPayoutService, docServiceMock, shopServiceMock);
+        accountHolderService = spy(new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager()));
+        adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClient, 1, 0), new ConcurrentMapCacheManager()), accountHolderService, retryPayoutService, docServiceMock, shopServiceMock, new NotificationExecutors(MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), MoreExecutors.directExecutor()));
         when(eventMock.getDbId()).thenReturn(1L);
         when(adyenNotificationRepositoryMock.findOneById(1L)).thenReturn(adyenNotificationMock);
     }
@@ -329,6 +344,22 @@ public class AdyenNotificationListenerTest {
         verify(adyenNotificationRepositoryMock).delete(1L);
     }
 
+    @Test
+    public void shouldEvictAccountHolderOnStatusChange() throws Exception {
+        URL url = Resources.getResource("adyenRequests/ACCOUNT_HOLDER_STATUS_CHANGE_ALLOW_PAYOUT.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+        when(adyenNotificationMock.getRawAdyenNotification()).thenReturn(adyenRequestJson);
+        when(adyenNotificationMock.getEventType()).thenReturn("ACCOUNT_HOLDER_STATUS_CHANGE");
+        when(adyenNotificationMock.getAccountHolderCode()).thenReturn("8278");
+
+        when(miraklMarketplacePlatformOperatorApiClient.getShops(miraklShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
+        when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShopMock));
+
+        adyenNotificationListener.handleContextRefresh(eventMock);
+
+        verify(accountHolderService).evict("8278");
+    }
+
     @Test
     public void shouldSendEmailForNotAllowedPayouts() throws Exception {
         URL url = Resources.getResource("adyenRequests/ACCOUNT_HOLDER_STATUS_CHANGE_NOT_ALLOW_PAYOUT.json");
@@ -377,4 +408,61 @@ public class AdyenNotificationListenerTest {
         Assertions.assertThat(requestCaptorValue.getAccountHolderCode()).isEqualTo("22057");
         verify(docServiceMock).removeMiraklMediaForIndividual("22057");
     }
+
+    @Test
+    public void shouldProcessNotificationCarriedByTheEventWithoutReadingItBackNorParsingIt() throws Exception {
+        URL url = Resources.getResource("adyenRequests/INDIVIDUAL_VERIFICATION_PASSED.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponseMock);
+        when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL);
+
+        final NotificationHandler notificationHandler = spy(new NotificationHandler());
+        final GenericNotification genericNotification = notificationHandler.handleMarketpayNotificationJson(adyenRequestJson);
+        adyenNotificationListener = new AdyenNotificationListener(notificationHandler, adyenNotificationRepositoryMock, mailTemplateServiceMock, new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClient, 1, 0), new ConcurrentMapCacheManager()), accountHolderService, retryPayoutService, docServiceMock, shopServiceMock, new NotificationExecutors(MoreExecutors.directExecutor(), MoreExecutors.directExecutor(), MoreExecutors.directExecutor()));
+
+        adyenNotificationListener.handleContextRefresh(new AdyenNotifcationEvent(storedNotification(2L, adyenRequestJson), genericNotification));
+
+        verify(docServiceMock).removeMiraklMediaForIndividual("22057");
+        verify(adyenNotificationRepositoryMock, never()).findOneById(any());
+        verify(notificationHandler).handleMarketpayNotificationJson(adyenRequestJson);
+        verify(adyenNotificationRepositoryMock).delete(2L);
+    }
+
+    @Test
+    public void shouldKeepNotificationStoredWhenItsExecutorIsSaturated() throws Exception {
+        URL url = Resources.getResource("adyenRequests/INDIVIDUAL_VERIFICATION_PASSED.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+        adyenNotificationListener = new AdyenNotificationListener(new NotificationHandler(), adyenNotificationRepositoryMock, mailTemplateServiceMock, new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClient, 1, 0), new ConcurrentMapCacheManager()), accountHolderService, retryPayoutService, docServiceMock, shopServiceMock, new NotificationExecutors(MoreExecutors.directExecutor(), command -> {
+            throw new RejectedExecutionException("saturated");
+        }, MoreExecutors.directExecutor()));
+
+        adyenNotificationListener.handleContextRefresh(new AdyenNotifcationEvent(storedNotification(2L, adyenRequestJson)));
+
+        verify(docServiceMock, never()).removeMiraklMediaForIndividual(any());
+        verify(adyenNotificationRepositoryMock, never()).delete(anyLong());
+        verify(adyenNotificationRepositoryMock).release(2L);
+    }
+
+    @Test
+    public void shouldReleaseNotificationWhenHandlingFails() throws Exception {
+        URL url = Resources.getResource("adyenRequests/INDIVIDUAL_VERIFICATION_PASSED.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponseMock);
+        when(getAccountHolderResponseMock.getLegalEntity()).thenReturn(GetAccountHolderResponse.LegalEntityEnum.INDIVIDUAL);
+        doThrow(new IllegalStateException("Mirakl unavailable")).when(docServiceMock).removeMiraklMediaForIndividual("22057");
+
+        adyenNotificationListener.handleContextRefresh(new AdyenNotifcationEvent(storedNotification(2L, adyenRequestJson)));
+
+        verify(adyenNotificationRepositoryMock).release(2L);
+        verify(adyenNotificationRepositoryMock, never()).delete(anyLong());
+    }
+
+    private static AdyenNotification storedNotification(final Long id, final String rawAdyenNotification) {
+        final AdyenNotification adyenNotification = new AdyenNotification().rawAdyenNotification(rawAdyenNotification)
+                                                                           .eventType("ACCOUNT_HOLDER_VERIFICATION")
+                                                                           .accountHolderCode("22057");
+        adyenNotification.setId(id);
+        return adyenNotification;
+    }
 }
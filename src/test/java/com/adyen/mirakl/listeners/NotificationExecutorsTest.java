@@ -0,0 +1,185 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.listeners;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationExecutorsTest {
+
+    private static final Runnable NOT_REJECTED = () -> {
+        throw new AssertionError("notification rejected");
+    };
+
+    private ExecutorService accountHolderExecutor;
+    private ExecutorService verificationExecutor;
+    private ExecutorService fundsExecutor;
+    private NotificationExecutors notificationExecutors;
+
+    @Before
+    public void setup() {
+        accountHolderExecutor = Executors.newFixedThreadPool(4);
+        verificationExecutor = Executors.newFixedThreadPool(4);
+        fundsExecutor = Executors.newFixedThreadPool(4);
+        notificationExecutors = new NotificationExecutors(accountHolderExecutor, verificationExecutor, fundsExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        accountHolderExecutor.shutdownNow();
+        verificationExecutor.shutdownNow();
+        fundsExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRouteNotificationsByEventType() {
+        assertThat(notificationExecutors.forEventType("ACCOUNT_HOLDER_VERIFICATION")).isSameAs(verificationExecutor);
+        assertThat(notificationExecutors.forEventType("TRANSFER_FUNDS")).isSameAs(fundsExecutor);
+        assertThat(notificationExecutors.forEventType("ACCOUNT_HOLDER_PAYOUT")).isSameAs(fundsExecutor);
+        assertThat(notificationExecutors.forEventType("ACCOUNT_HOLDER_STATUS_CHANGE")).isSameAs(accountHolderExecutor);
+        assertThat(notificationExecutors.forEventType("")).isSameAs(accountHolderExecutor);
+    }
+
+    @Test
+    public void shouldRunNotificationsOfSameAccountHolderInOrder() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        final List<String> processed = new CopyOnWriteArrayList<>();
+
+        notificationExecutors.execute("ACCOUNT_HOLDER_STATUS_CHANGE", "shop1", () -> {
+            firstStarted.countDown();
+            await(releaseFirst);
+            processed.add("statusChange");
+            done.countDown();
+        }, NOT_REJECTED);
+        assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        notificationExecutors.execute("ACCOUNT_HOLDER_VERIFICATION", "shop1", () -> {
+            processed.add("verification");
+            done.countDown();
+        }, NOT_REJECTED);
+        notificationExecutors.execute("ACCOUNT_HOLDER_VERIFICATION", "shop2", () -> {
+            processed.add("otherShop");
+            done.countDown();
+        }, NOT_REJECTED);
+
+        waitFor(() -> processed.contains("otherShop"));
+        assertThat(processed).containsExactly("otherShop");
+
+        releaseFirst.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(processed).containsExactly("otherShop", "statusChange", "verification");
+    }
+
+    @Test
+    public void shouldKeepOrderingAccountHolderAfterRejection() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final NotificationExecutors rejectingVerifications = new NotificationExecutors(accountHolderExecutor, command -> {
+            throw new RejectedExecutionException("saturated");
+        }, fundsExecutor);
+
+        boolean rejected = false;
+        try {
+            rejectingVerifications.execute("ACCOUNT_HOLDER_VERIFICATION", "shop1", () -> {
+            }, NOT_REJECTED);
+        } catch (RejectedExecutionException e) {
+            rejected = true;
+        }
+        assertThat(rejected).isTrue();
+        rejectingVerifications.execute("ACCOUNT_HOLDER_STATUS_CHANGE", "shop1", done::countDown, NOT_REJECTED);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldKeepOrderingAccountHolderAfterRejectionOfAQueuedNotification() throws Exception {
+        final AtomicInteger submitted = new AtomicInteger();
+        final NotificationExecutors rejectingSecondVerification = new NotificationExecutors(accountHolderExecutor, command -> {
+            if (submitted.incrementAndGet() == 2) {
+                throw new RejectedExecutionException("saturated");
+            }
+            verificationExecutor.execute(command);
+        }, fundsExecutor);
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CountDownLatch rejected = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<String> processed = new CopyOnWriteArrayList<>();
+
+        rejectingSecondVerification.execute("ACCOUNT_HOLDER_VERIFICATION", "shop1", () -> {
+            firstStarted.countDown();
+            await(releaseFirst);
+            processed.add("first");
+        }, NOT_REJECTED);
+        assertThat(firstStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        rejectingSecondVerification.execute("ACCOUNT_HOLDER_VERIFICATION", "shop1", () -> processed.add("second"), rejected::countDown);
+
+        releaseFirst.countDown();
+        assertThat(rejected.await(5, TimeUnit.SECONDS)).isTrue();
+        rejectingSecondVerification.execute("ACCOUNT_HOLDER_STATUS_CHANGE", "shop1", () -> {
+            processed.add("third");
+            done.countDown();
+        }, NOT_REJECTED);
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(processed).containsExactly("first", "third");
+        waitFor(() -> pendingAccountHolders(rejectingSecondVerification) == 0);
+        assertThat(pendingAccountHolders(rejectingSecondVerification)).isZero();
+    }
+
+    private static int pendingAccountHolders(final NotificationExecutors notificationExecutors) {
+        return notificationExecutors.metrics()
+                                    .stream()
+                                    .filter(metric -> "notifications.accountHolders.pending".equals(metric.getName()))
+                                    .map(metric -> metric.getValue().intValue())
+                                    .findFirst()
+                                    .orElse(-1);
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
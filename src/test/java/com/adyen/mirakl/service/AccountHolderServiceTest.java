@@ -0,0 +1,135 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import com.adyen.model.marketpay.AccountHolderDetails;
+import com.adyen.model.marketpay.BankAccountDetail;
+import com.adyen.model.marketpay.GetAccountHolderRequest;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
+import com.adyen.service.Account;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountHolderServiceTest {
+
+    private AccountHolderService accountHolderService;
+
+    @Mock
+    private Account adyenAccountServiceMock;
+
+    @Captor
+    private ArgumentCaptor<GetAccountHolderRequest> accountHolderRequestCaptor;
+
+    private GetAccountHolderResponse getAccountHolderResponse;
+
+    @Before
+    public void setup() throws Exception {
+        accountHolderService = new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager());
+
+        com.adyen.model.marketpay.Account account = new com.adyen.model.marketpay.Account();
+        account.setAccountCode("123456");
+        getAccountHolderResponse = new GetAccountHolderResponse();
+        getAccountHolderResponse.setAccountHolderCode("2000");
+        getAccountHolderResponse.addAccountsItem(account);
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getAccountHolderResponse);
+    }
+
+    @Test
+    public void shouldOnlyCallAdyenOncePerAccountHolder() throws Exception {
+        Assertions.assertThat(accountHolderService.getAccountHolder("2000")).isSameAs(getAccountHolderResponse);
+        Assertions.assertThat(accountHolderService.getAccountHolder("2000")).isSameAs(getAccountHolderResponse);
+        Assertions.assertThat(accountHolderService.getAccountHolderByAccountCode("123456")).isSameAs(getAccountHolderResponse);
+
+        verify(adyenAccountServiceMock).getAccountHolder(accountHolderRequestCaptor.capture());
+        Assertions.assertThat(accountHolderRequestCaptor.getValue().getAccountHolderCode()).isEqualTo("2000");
+        Assertions.assertThat(accountHolderService.metrics()).extracting("name", "value")
+                  .containsExactly(Assertions.tuple("cache.accountHolders.hits", 2L), Assertions.tuple("cache.accountHolders.misses", 1L));
+    }
+
+    @Test
+    public void shouldIndexAccountHoldersByAccountCode() throws Exception {
+        accountHolderService.getAccountHolderByAccountCode("123456");
+        accountHolderService.getAccountHolder("2000");
+
+        verify(adyenAccountServiceMock).getAccountHolder(accountHolderRequestCaptor.capture());
+        Assertions.assertThat(accountHolderRequestCaptor.getValue().getAccountCode()).isEqualTo("123456");
+    }
+
+    @Test
+    public void shouldCallAdyenAgainAfterEviction() throws Exception {
+        accountHolderService.getAccountHolder("2000");
+        accountHolderService.evict("2000");
+        accountHolderService.getAccountHolderByAccountCode("123456");
+
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(accountHolderRequestCaptor.capture());
+        Assertions.assertThat(accountHolderRequestCaptor.getValue().getAccountHolderCode()).isEqualTo("2000");
+    }
+
+    @Test
+    public void shouldUseIndexedBankAccountWithoutCallingAdyen() throws Exception {
+        accountHolderService.indexBankAccount("2000", accountHolderDetails("indexedUUID"));
+
+        Assertions.assertThat(accountHolderService.getBankAccountUUID("2000")).isEqualTo("indexedUUID");
+        verify(adyenAccountServiceMock, never()).getAccountHolder(any());
+    }
+
+    @Test
+    public void shouldFetchBankAccountOnceEvicted() throws Exception {
+        getAccountHolderResponse.setAccountHolderDetails(accountHolderDetails("currentUUID"));
+        accountHolderService.indexBankAccount("2000", accountHolderDetails("deletedUUID"));
+        accountHolderService.evictBankAccount("2000");
+
+        Assertions.assertThat(accountHolderService.getBankAccountUUID("2000")).isEqualTo("currentUUID");
+        Assertions.assertThat(accountHolderService.getBankAccountUUID("2000")).isEqualTo("currentUUID");
+        verify(adyenAccountServiceMock).getAccountHolder(any());
+    }
+
+    @Test
+    public void shouldReturnNullWithoutBankAccount() throws Exception {
+        accountHolderService.clearBankAccounts();
+
+        Assertions.assertThat(accountHolderService.getBankAccountUUID("2000")).isNull();
+    }
+
+    private static AccountHolderDetails accountHolderDetails(final String bankAccountUUID) {
+        BankAccountDetail bankAccountDetail = new BankAccountDetail();
+        bankAccountDetail.setBankAccountUUID(bankAccountUUID);
+        AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.addBankAccountDetailsItem(bankAccountDetail);
+        return accountHolderDetails;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Test;
+import com.adyen.Client;
+import com.adyen.Config;
+import com.adyen.model.marketpay.DocumentDetail;
+import com.adyen.model.marketpay.UploadDocumentRequest;
+import com.adyen.service.exception.ApiException;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AdyenDocumentUploaderTest {
+
+    @Test
+    public void shouldWriteBase64EncodedUploadDocumentRequest() throws Exception {
+        // not a multiple of 3 or of the copy buffer, so padding and partial chunks are covered
+        final byte[] content = new byte[3 * AdyenDocumentUploader.BUFFER_SIZE + 1];
+        new Random(42).nextBytes(content);
+
+        final DocumentDetail documentDetail = new DocumentDetail();
+        documentDetail.setAccountHolderCode("shopId");
+        documentDetail.setShareholderCode("shareholderCode");
+        documentDetail.setDocumentType(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        documentDetail.setFilename("passport.jpg");
+
+        final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        AdyenDocumentUploader.writeRequest(documentDetail, new ByteArrayInputStream(content), requestBody);
+
+        final UploadDocumentRequest request = new Gson().fromJson(new String(requestBody.toByteArray(), StandardCharsets.UTF_8), UploadDocumentRequest.class);
+        assertThat(request.getDocumentContent()).isEqualTo(Base64.getEncoder().encodeToString(content));
+        assertThat(request.getDocumentDetail().getAccountHolderCode()).isEqualTo("shopId");
+        assertThat(request.getDocumentDetail().getShareholderCode()).isEqualTo("shareholderCode");
+        assertThat(request.getDocumentDetail().getDocumentType()).isEqualTo(DocumentDetail.DocumentTypeEnum.PASSPORT);
+        assertThat(request.getDocumentDetail().getFilename()).isEqualTo("passport.jpg");
+        assertThat(AdyenDocumentUploader.contentLength(documentDetail, content.length)).isEqualTo(requestBody.size());
+    }
+
+    @Test
+    public void shouldWriteEmptyDocument() throws Exception {
+        final DocumentDetail documentDetail = new DocumentDetail();
+
+        final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        AdyenDocumentUploader.writeRequest(documentDetail, new ByteArrayInputStream(new byte[0]), requestBody);
+
+        final UploadDocumentRequest request = new Gson().fromJson(new String(requestBody.toByteArray(), StandardCharsets.UTF_8), UploadDocumentRequest.class);
+        assertThat(request.getDocumentContent()).isEmpty();
+        assertThat(AdyenDocumentUploader.contentLength(documentDetail, 0)).isEqualTo(requestBody.size());
+    }
+
+    @Test
+    public void shouldParseTheAdyenErrorOfARejectedUpload() throws Exception {
+        final byte[] error = "{\"status\":422,\"errorCode\":\"10_069\",\"message\":\"Document is too large\",\"errorType\":\"validation\"}".getBytes(StandardCharsets.UTF_8);
+        final HttpServer adyen = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        adyen.createContext("/", exchange -> {
+            ByteStreams.exhaust(exchange.getRequestBody());
+            exchange.sendResponseHeaders(422, error.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(error);
+            }
+        });
+        adyen.start();
+        try {
+            final Config config = new Config();
+            config.setMarketPayEndpoint("http://localhost:" + adyen.getAddress().getPort());
+            config.setUsername("username");
+            config.setPassword("password");
+            config.setApplicationName("test");
+            final AdyenDocumentUploader uploader = new AdyenDocumentUploader(new Client(config));
+
+            final byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+            uploader.uploadDocument(new DocumentDetail(), new ByteArrayInputStream(content), content.length);
+            fail("The upload should have been rejected");
+        } catch (ApiException e) {
+            assertThat(e.getStatusCode()).isEqualTo(422);
+            assertThat(e.getError().getErrorCode()).isEqualTo("10_069");
+            assertThat(e.getError().getMessage()).isEqualTo("Document is too large");
+        } finally {
+            adyen.stop(0);
+        }
+    }
+
+    @Test
+    public void shouldKeepAResponseWhichIsNotAnAdyenError() {
+        final ApiException apiException = AdyenDocumentUploader.apiException("<html>Bad gateway</html>", 502);
+
+        assertThat(apiException.getStatusCode()).isEqualTo(502);
+        assertThat(apiException.getMessage()).isEqualTo("<html>Bad gateway</html>");
+        assertThat(apiException.getError()).isNull();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.AdyenNotification;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
+import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.util.NotificationLease;
+import com.google.common.collect.ImmutableList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdyenNotificationRecoveryServiceTest {
+
+    private AdyenNotificationRecoveryService adyenNotificationRecoveryService;
+
+    @Mock
+    private AdyenNotificationRepository adyenNotificationRepositoryMock;
+    @Mock
+    private ApplicationEventPublisher publisherMock;
+    @Captor
+    private ArgumentCaptor<AdyenNotifcationEvent> eventCaptor;
+    @Captor
+    private ArgumentCaptor<ZonedDateTime> createdBeforeCaptor;
+    @Captor
+    private ArgumentCaptor<ZonedDateTime> nowCaptor;
+    @Captor
+    private ArgumentCaptor<Pageable> pageableCaptor;
+
+    private final NotificationLease notificationLease = new NotificationLease(3600);
+
+    @Before
+    public void setup() {
+        final ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setNotificationRecoveryPageSize(2);
+        applicationProperties.setNotificationRecoveryMaxAttempts(3);
+        applicationProperties.setNotificationRecoveryMinAgeSeconds(300);
+        applicationProperties.setNotificationRecoveryPerSecond(1000D);
+        adyenNotificationRecoveryService = new AdyenNotificationRecoveryService(adyenNotificationRepositoryMock, publisherMock, applicationProperties, notificationLease);
+    }
+
+    @Test
+    public void shouldRepublishLeftoverNotificationsPageByPage() {
+        final AdyenNotification first = notification(1L, 0);
+        final AdyenNotification second = notification(2L, 1);
+        final AdyenNotification third = notification(5L, 0);
+        when(adyenNotificationRepositoryMock.findUnprocessed(eq(0L), eq(3), any(ZonedDateTime.class), any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(first, second));
+        when(adyenNotificationRepositoryMock.findUnprocessed(eq(2L), eq(3), any(ZonedDateTime.class), any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(third));
+
+        final int recovered = adyenNotificationRecoveryService.recoverNotifications();
+
+        assertThat(recovered).isEqualTo(3);
+        verify(publisherMock, times(3)).publishEvent(eventCaptor.capture());
+        final List<AdyenNotifcationEvent> events = eventCaptor.getAllValues();
+        assertThat(events).extracting(AdyenNotifcationEvent::getDbId).containsExactly(1L, 2L, 5L);
+        assertThat(events).extracting(AdyenNotifcationEvent::getAdyenNotification).containsExactly(first, second, third);
+        assertThat(first.getAttempts()).isEqualTo(1);
+        assertThat(second.getAttempts()).isEqualTo(2);
+        assertThat(third.getAttempts()).isEqualTo(1);
+        verify(adyenNotificationRepositoryMock).save(first);
+        verify(adyenNotificationRepositoryMock).save(second);
+        verify(adyenNotificationRepositoryMock).save(third);
+        assertThat(events).extracting(event -> event.getAdyenNotification().getDispatchedBy()).containsOnly(notificationLease.getOwner());
+        assertThat(first.getDispatchedUntil().isAfter(ZonedDateTime.now().plusMinutes(59))).isTrue();
+        verify(adyenNotificationRepositoryMock, never()).findUnprocessedNotLeasedBy(anyLong(), anyInt(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyString(), any(Pageable.class));
+    }
+
+    @Test
+    public void shouldTakeOverNotificationsLeasedBeforeARestart() {
+        final AdyenNotification leasedBeforeRestart = notification(1L, 0).dispatchedBy("earlier-boot").dispatchedUntil(ZonedDateTime.now().plusMinutes(30));
+        when(adyenNotificationRepositoryMock.findUnprocessedNotLeasedBy(eq(0L), eq(3), any(ZonedDateTime.class), any(ZonedDateTime.class), eq(notificationLease.getOwner()), any(Pageable.class)))
+            .thenReturn(ImmutableList.of(leasedBeforeRestart));
+
+        final int recovered = adyenNotificationRecoveryService.recoverNotificationsOnStartup();
+
+        assertThat(recovered).isEqualTo(1);
+        verify(publisherMock).publishEvent(eventCaptor.capture());
+        assertThat(eventCaptor.getValue().getDbId()).isEqualTo(1L);
+        assertThat(leasedBeforeRestart.getDispatchedBy()).isEqualTo(notificationLease.getOwner());
+        verify(adyenNotificationRepositoryMock).save(leasedBeforeRestart);
+        verify(adyenNotificationRepositoryMock, never()).findUnprocessed(anyLong(), anyInt(), any(ZonedDateTime.class), any(ZonedDateTime.class), any(Pageable.class));
+    }
+
+    @Test
+    public void shouldOnlyPickNotificationsOlderThanMinAgeWhichAreNotDispatched() {
+        final ZonedDateTime before = ZonedDateTime.now();
+        when(adyenNotificationRepositoryMock.findUnprocessed(anyLong(), anyInt(), createdBeforeCaptor.capture(), nowCaptor.capture(), pageableCaptor.capture())).thenReturn(ImmutableList.of());
+
+        final int recovered = adyenNotificationRecoveryService.recoverNotifications();
+
+        assertThat(recovered).isZero();
+        assertThat(createdBeforeCaptor.getValue().isBefore(ZonedDateTime.now().minusSeconds(299))).isTrue();
+        assertThat(nowCaptor.getValue().isBefore(before)).isFalse();
+        assertThat(pageableCaptor.getValue().getPageSize()).isEqualTo(2);
+        verify(publisherMock, times(0)).publishEvent(any(AdyenNotifcationEvent.class));
+    }
+
+    private static AdyenNotification notification(final Long id, final int attempts) {
+        final AdyenNotification notification = new AdyenNotification().rawAdyenNotification("notification" + id).attempts(attempts);
+        notification.setId(id);
+        return notification;
+    }
+}
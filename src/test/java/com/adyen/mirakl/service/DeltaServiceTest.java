@@ -116,4 +116,22 @@ public class DeltaServiceTest {
         Assertions.assertThat(all.size()).isEqualTo(1);
         Assertions.assertThat(Date.from(all.get(0).getShopDelta().toInstant())).isInSameSecondWindowAs(now);
     }
+
+    @Test
+    public void storesAndClearsShopCheckpoint(){
+        deltaService.getShopDelta();
+        Assertions.assertThat(deltaService.getShopCheckpoint().isPresent()).isFalse();
+
+        final ZonedDateTime nextDelta = ZonedDateTime.now();
+        deltaService.updateShopCheckpoint(20, nextDelta);
+
+        final MiraklDelta checkpoint = deltaService.getShopCheckpoint().orElseThrow(IllegalStateException::new);
+        Assertions.assertThat(checkpoint.getShopCheckpointOffset()).isEqualTo(20);
+        Assertions.assertThat(checkpoint.getShopCheckpointDelta()).isEqualTo(nextDelta);
+
+        deltaService.updateShopDelta(nextDelta);
+
+        Assertions.assertThat(deltaService.getShopCheckpoint().isPresent()).isFalse();
+        Assertions.assertThat(miraklDeltaRepository.findAll()).hasSize(1);
+    }
 }
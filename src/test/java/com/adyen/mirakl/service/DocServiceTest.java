@@ -23,21 +23,30 @@
 package com.adyen.mirakl.service;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.config.Constants;
 import com.adyen.mirakl.domain.DocError;
@@ -51,19 +60,22 @@ import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.BankAccountDetail;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
-import com.adyen.model.marketpay.UploadDocumentRequest;
 import com.adyen.model.marketpay.UploadDocumentResponse;
 import com.adyen.service.Account;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.mirakl.client.mmp.domain.common.FileWrapper;
 import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.document.MiraklDeleteShopDocumentRequest;
+import com.mirakl.client.mmp.request.shop.document.MiraklDownloadShopsDocumentsRequest;
 import com.mirakl.client.mmp.request.shop.document.MiraklGetShopDocumentsRequest;
-import static com.google.common.io.Files.toByteArray;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -73,6 +85,9 @@ import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DocServiceTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @InjectMocks
     private DocService docService;
 
@@ -81,12 +96,16 @@ public class DocServiceTest {
     @Mock
     private Account adyenAccountServiceMock;
     @Mock
+    private AdyenDocumentUploader adyenDocumentUploaderMock;
+    @Mock
     private DeltaService deltaServiceMock;
     @Mock
     private IndividualDocumentService individualDocumentServiceMock;
     @Mock
     private UboDocumentService uboDocumentServiceMock;
     @Mock
+    private MiraklShopService miraklShopServiceMock;
+    @Mock
     private MiraklShopDocument miraklShopDocumentMock;
     @Mock
     private FileWrapper fileWrapperMock;
@@ -110,12 +129,16 @@ public class DocServiceTest {
     private ApplicationProperties applicationProperties;
 
     @Captor
-    private ArgumentCaptor<UploadDocumentRequest> uploadDocumentRequestCaptor;
+    private ArgumentCaptor<DocumentDetail> documentDetailCaptor;
+    @Captor
+    private ArgumentCaptor<Long> contentSizeCaptor;
     @Captor
     private ArgumentCaptor<MiraklGetShopDocumentsRequest> miraklGetShopDocumentsRequestCaptor;
     @Captor
     private ArgumentCaptor<MiraklDeleteShopDocumentRequest> miraklDeleteShopDocumentRequestCaptor;
     @Captor
+    private ArgumentCaptor<MiraklDownloadShopsDocumentsRequest> miraklDownloadShopsDocumentsRequestCaptor;
+    @Captor
     private ArgumentCaptor<DocRetry> docRetryCaptor;
     @Captor
     private ArgumentCaptor<DocError> docErrorCaptor;
@@ -123,6 +146,9 @@ public class DocServiceTest {
     @Before
     public void setUp() {
         setField(docService, "environment", "TEST");
+        setField(docService, "accountHolderService", new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager()));
+        setField(docService, "documentPipelineExecutor", MoreExecutors.directExecutor());
+        when(applicationProperties.getDocumentDownloadBatchSize()).thenReturn(10);
     }
 
     @Test
@@ -153,17 +179,17 @@ public class DocServiceTest {
         when(fileWrapper.getFile()).thenReturn(file);
         when(fileWrapper.getFilename()).thenReturn(file.getName());
         when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
-        when(adyenAccountServiceMock.uploadDocument(uploadDocumentRequestCaptor.capture())).thenReturn(responseMock);
+        when(adyenDocumentUploaderMock.uploadDocument(documentDetailCaptor.capture(), any(InputStream.class), contentSizeCaptor.capture())).thenReturn(responseMock);
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
 
-        UploadDocumentRequest uploadDocumentRequest = uploadDocumentRequestCaptor.getValue();
-        assertEquals("1234", uploadDocumentRequest.getDocumentDetail().getAccountHolderCode());
-        assertEquals("uuid", uploadDocumentRequest.getDocumentDetail().getBankAccountUUID());
-        assertEquals(file.getName(), uploadDocumentRequest.getDocumentDetail().getFilename());
-        assertEquals(Base64.getEncoder().encodeToString(toByteArray(file)), uploadDocumentRequest.getDocumentContent());
-        assertEquals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, uploadDocumentRequest.getDocumentDetail().getDocumentType());
+        DocumentDetail documentDetail = documentDetailCaptor.getValue();
+        assertEquals("1234", documentDetail.getAccountHolderCode());
+        assertEquals("uuid", documentDetail.getBankAccountUUID());
+        assertEquals(file.getName(), documentDetail.getFilename());
+        assertEquals(Long.valueOf(file.length()), contentSizeCaptor.getValue());
+        assertEquals(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, documentDetail.getDocumentType());
         verify(deltaServiceMock).getDocumentDelta();
     }
 
@@ -176,30 +202,87 @@ public class DocServiceTest {
         when(miraklShopDocumentMock.getTypeCode()).thenReturn("typeCode");
         when(miraklShopDocumentMock.getShopId()).thenReturn("shopId");
 
-        when(uboDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
+        when(uboDocumentServiceMock.extractDocuments(eq(ImmutableList.of(miraklShopDocumentMock)), any(DocumentTypeResolver.class))).thenReturn(ImmutableList.of(uboDocumentDTOMock));
         when(uboDocumentDTOMock.getMiraklShopDocument()).thenReturn(miraklShopDocumentMock);
         when(uboDocumentDTOMock.getDocumentTypeEnum()).thenReturn(DocumentDetail.DocumentTypeEnum.ID_CARD);
         when(uboDocumentDTOMock.getShareholderCode()).thenReturn("shareholderCode");
 
-        when(individualDocumentServiceMock.extractDocuments(ImmutableList.of(miraklShopDocumentMock))).thenReturn(Collections.emptyList());
+        when(individualDocumentServiceMock.extractDocuments(eq(ImmutableList.of(miraklShopDocumentMock)), any(DocumentTypeResolver.class))).thenReturn(Collections.emptyList());
 
         when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(any())).thenReturn(fileWrapperMock);
         when(fileWrapperMock.getFile()).thenReturn(file);
         when(fileWrapperMock.getFilename()).thenReturn("fileName");
-        when(adyenAccountServiceMock.uploadDocument(any())).thenReturn(responseMock);
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(), anyLong())).thenReturn(responseMock);
 
         when(miraklShopDocumentMock.getId()).thenReturn("docId");
         when(docRetryRepositoryMock.findOneByDocId("docId")).thenReturn(Optional.of(docRetryMock1));
 
         docService.processUpdatedDocuments();
 
-        verify(adyenAccountServiceMock).uploadDocument(uploadDocumentRequestCaptor.capture());
-        UploadDocumentRequest uploadDocumentRequest = uploadDocumentRequestCaptor.getValue();
-        Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getShareholderCode()).isEqualTo("shareholderCode");
-        Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getAccountHolderCode()).isEqualTo("shopId");
-        Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getShareholderCode()).isEqualTo("shareholderCode");
-        Assertions.assertThat(uploadDocumentRequest.getDocumentDetail().getAccountHolderCode()).isEqualTo("shopId");
+        verify(adyenDocumentUploaderMock).uploadDocument(documentDetailCaptor.capture(), any(InputStream.class), anyLong());
+        DocumentDetail documentDetail = documentDetailCaptor.getValue();
+        Assertions.assertThat(documentDetail.getShareholderCode()).isEqualTo("shareholderCode");
+        Assertions.assertThat(documentDetail.getAccountHolderCode()).isEqualTo("shopId");
+
+    }
+
+    @Test
+    public void shouldUploadEveryEntryOfTheDownloadedArchive() throws Exception {
+        final File archive = temporaryFolder.newFile("documents.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("1234/bankproof.png"));
+            zip.write("bankproof".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("1234/kbis.pdf"));
+            zip.write("kbis".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final MiraklShopDocument bankproof = new MiraklShopDocument();
+        bankproof.setId("bankproofId");
+        bankproof.setFileName("bankproof.png");
+        bankproof.setTypeCode(Constants.BANKPROOF);
+        bankproof.setShopId("1234");
+        final MiraklShopDocument companyRegistration = new MiraklShopDocument();
+        companyRegistration.setId("kbisId");
+        companyRegistration.setFileName("kbis.pdf");
+        companyRegistration.setTypeCode(Constants.COMPANY_REGISTRATION);
+        companyRegistration.setShopId("1234");
+        final MiraklShopDocument missing = new MiraklShopDocument();
+        missing.setId("missingId");
+        missing.setFileName("missing.pdf");
+        missing.setTypeCode(Constants.COMPANY_REGISTRATION);
+        missing.setShopId("1234");
+
+        GetAccountHolderResponse getAccountHolderResponse = new GetAccountHolderResponse();
+        BankAccountDetail bankAccountDetail = new BankAccountDetail();
+        bankAccountDetail.setBankAccountUUID("uuid");
+        AccountHolderDetails accountHolderDetails = new AccountHolderDetails();
+        accountHolderDetails.addBankAccountDetailsItem(bankAccountDetail);
+        getAccountHolderResponse.setAccountHolderDetails(accountHolderDetails);
+
+        final Map<String, String> uploadedContents = new HashMap<>();
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShopDocuments(any())).thenReturn(ImmutableList.of(bankproof, companyRegistration, missing));
+        when(miraklMarketplacePlatformOperatorApiClientMock.downloadShopsDocuments(miraklDownloadShopsDocumentsRequestCaptor.capture())).thenReturn(fileWrapperMock);
+        when(fileWrapperMock.getFile()).thenReturn(archive);
+        when(fileWrapperMock.getFilename()).thenReturn(archive.getName());
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
+        when(adyenDocumentUploaderMock.uploadDocument(any(), any(InputStream.class), anyLong())).thenAnswer(invocation -> {
+            final DocumentDetail documentDetail = invocation.getArgumentAt(0, DocumentDetail.class);
+            uploadedContents.put(documentDetail.getFilename(), new String(ByteStreams.toByteArray(invocation.getArgumentAt(1, InputStream.class)), StandardCharsets.UTF_8));
+            return responseMock;
+        });
+        when(docRetryRepositoryMock.findOneByDocId(any())).thenReturn(Optional.empty());
+
+        docService.processUpdatedDocuments();
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).downloadShopsDocuments(any());
+        Assertions.assertThat(miraklDownloadShopsDocumentsRequestCaptor.getValue().getDocumentIds()).containsExactly("bankproofId", "kbisId", "missingId");
+        verify(adyenDocumentUploaderMock, times(2)).uploadDocument(documentDetailCaptor.capture(), any(InputStream.class), anyLong());
+        Assertions.assertThat(documentDetailCaptor.getAllValues()).extracting(DocumentDetail::getDocumentType)
+                  .containsExactly(DocumentDetail.DocumentTypeEnum.BANK_STATEMENT, DocumentDetail.DocumentTypeEnum.COMPANY_REGISTRATION_SCREENING);
+        Assertions.assertThat(uploadedContents).containsEntry("bankproof.png", "bankproof").containsEntry("kbis.pdf", "kbis");
 
+        verify(docRetryRepositoryMock).saveAndFlush(docRetryCaptor.capture());
+        Assertions.assertThat(docRetryCaptor.getValue().getDocId()).isEqualTo("missingId");
     }
 
     @Test
@@ -298,7 +381,7 @@ public class DocServiceTest {
         final MiraklGetShopDocumentsRequest requestToMirakl = miraklGetShopDocumentsRequestCaptor.getValue();
         Assertions.assertThat(requestToMirakl.getShopIds()).containsOnly("shopId1");
 
-        verify(uboDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
-        verify(individualDocumentServiceMock).extractDocuments(ImmutableList.of(miraklShopDocumentMock1));
+        verify(uboDocumentServiceMock).extractDocuments(eq(ImmutableList.of(miraklShopDocumentMock1)), any(DocumentTypeResolver.class));
+        verify(individualDocumentServiceMock).extractDocuments(eq(ImmutableList.of(miraklShopDocumentMock1)), any(DocumentTypeResolver.class));
     }
 }
@@ -23,6 +23,7 @@ package com.adyen.mirakl.service;
 
 import java.util.List;
 import org.assertj.core.api.Assertions;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
@@ -30,9 +31,11 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import com.adyen.mirakl.domain.ShareholderMapping;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.DocumentDTO;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
@@ -42,6 +45,7 @@ import com.mirakl.client.mmp.domain.shop.document.MiraklShopDocument;
 import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
 import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class IndividualDocumentServiceTest {
@@ -58,7 +62,7 @@ public class IndividualDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2, miraklShops3;
+    private MiraklShops miraklShops1;
     @Mock
     private MiraklShop miraklShop1, miraklShop2, miraklShop3;
     @Mock
@@ -67,6 +71,11 @@ public class IndividualDocumentServiceTest {
     @Captor
     private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
 
+    @Before
+    public void setUp() {
+        setField(individualDocumentService, "miraklShopService", new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0), new ConcurrentMapCacheManager()));
+    }
+
     @Test
     public void shouldExtractMiraklDocumentsRelatedToUbos() {
         //shop 1
@@ -89,10 +98,11 @@ public class IndividualDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2
         // 1 front driving licence & 1 rear driving licence                 - shop 3
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2).thenReturn(miraklShops3);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
-        when(miraklShops3.getShops()).thenReturn(ImmutableList.of(miraklShop3));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1);
+        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2, miraklShop3));
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
+        when(miraklShop3.getId()).thenReturn("shop3");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2));
         when(miraklShop3.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField3));
@@ -111,10 +121,8 @@ public class IndividualDocumentServiceTest {
                                                                                                                miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(3);
-        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        Assertions.assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
-        Assertions.assertThat(requestsToMirakl.get(2).getShopIds()).containsOnly("shop3");
+        Assertions.assertThat(requestsToMirakl.size()).isEqualTo(1);
+        Assertions.assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2", "shop3");
         Assertions.assertThat(result.size()).isEqualTo(5);
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
         Assertions.assertThat(result.get(0).getMiraklShopDocument().getTypeCode()).isEqualTo("adyen-individual-photoid");
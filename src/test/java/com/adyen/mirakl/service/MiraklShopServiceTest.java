@@ -0,0 +1,137 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MiraklShopServiceTest {
+
+    private MiraklShopService miraklShopService;
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+    @Mock
+    private MiraklShops miraklShopsMock;
+
+    @Captor
+    private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
+
+    private MiraklShop miraklShop;
+
+    @Before
+    public void setup() {
+        miraklShopService = new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0), new ConcurrentMapCacheManager());
+        miraklShop = new MiraklShop();
+        miraklShop.setId("shop1");
+        when(miraklShopsMock.getShops()).thenReturn(ImmutableList.of(miraklShop));
+    }
+
+    @Test
+    public void shouldOnlyCallMiraklOncePerShop() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
+
+        Assertions.assertThat(miraklShopService.getShop("shop1")).isSameAs(miraklShop);
+        Assertions.assertThat(miraklShopService.getShop("shop1")).isSameAs(miraklShop);
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).getShops(miraklGetShopsRequestCaptor.capture());
+        Assertions.assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1");
+    }
+
+    @Test
+    public void shouldServeRefreshedShopsWithoutCallingMirakl() {
+        miraklShopService.refresh(ImmutableList.of(miraklShop));
+
+        Assertions.assertThat(miraklShopService.getShop("shop1")).isSameAs(miraklShop);
+        verify(miraklMarketplacePlatformOperatorApiClientMock, never()).getShops(any());
+    }
+
+    @Test
+    public void shouldRetrieveAllMissingShopsInOneCall() {
+        final MiraklShop cachedShop = new MiraklShop();
+        cachedShop.setId("shop2");
+        miraklShopService.refresh(ImmutableList.of(cachedShop));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShopsMock);
+
+        Assertions.assertThat(miraklShopService.getShops(ImmutableList.of("shop1", "shop2", "unknown")))
+                  .containsOnlyKeys("shop1", "shop2")
+                  .containsEntry("shop1", miraklShop)
+                  .containsEntry("shop2", cachedShop);
+
+        verify(miraklMarketplacePlatformOperatorApiClientMock).getShops(miraklGetShopsRequestCaptor.capture());
+        Assertions.assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1", "unknown");
+        Assertions.assertThat(miraklShopService.getShop("shop1")).isSameAs(miraklShop);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailForUnknownShop() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenReturn(new MiraklShops());
+
+        miraklShopService.getShop("unknown");
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentLookupsOfTheSameShop() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenAnswer(invocation -> {
+            lookupStarted.countDown();
+            releaseLookup.await(5, TimeUnit.SECONDS);
+            return miraklShopsMock;
+        });
+
+        final CompletableFuture<MiraklShop> first = CompletableFuture.supplyAsync(() -> miraklShopService.getShop("shop1"));
+        Assertions.assertThat(lookupStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<MiraklShop> second = CompletableFuture.supplyAsync(() -> miraklShopService.getShop("shop1"));
+        Thread.sleep(100);
+        Assertions.assertThat(second.isDone()).isFalse();
+
+        releaseLookup.countDown();
+
+        Assertions.assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(miraklShop);
+        Assertions.assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(miraklShop);
+        verify(miraklMarketplacePlatformOperatorApiClientMock).getShops(any());
+    }
+}
@@ -23,7 +23,9 @@
 package com.adyen.mirakl.service;
 
 
+import java.io.StringReader;
 import java.net.URL;
+import java.time.ZonedDateTime;
 import java.util.List;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -31,10 +33,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.transaction.annotation.Transactional;
 import com.adyen.util.Util;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
@@ -60,6 +64,9 @@ public class PayoutServiceIntegrationTest {
     @Autowired
     private MiraklVoucherEntryRepository miraklVoucherEntryRepository;
 
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
     @Before
     public void removeExistingTestAdyenPayoutErrors() {
         final List<AdyenPayoutError> adyenPayoutErrors = adyenPayoutErrorRepository.findAll();
@@ -92,8 +99,9 @@ public class PayoutServiceIntegrationTest {
     public void testParseMiraklCsv() throws Exception {
         URL url = Resources.getResource("paymentvouchers/PaymentVoucher_PayoutShop01.csv");
         final String csvFile = Resources.toString(url, Charsets.UTF_8);
-        payoutService.parseMiraklCsv(csvFile);
+        final int stored = payoutService.parseMiraklCsv(new StringReader(csvFile));
 
+        assertEquals(1, stored);
         List<MiraklVoucherEntry> all = miraklVoucherEntryRepository.findAll();
         assertEquals(1, all.size());
         MiraklVoucherEntry miraklVoucherEntry = all.get(0);
@@ -105,4 +113,69 @@ public class PayoutServiceIntegrationTest {
         assertEquals("230207", miraklVoucherEntry.getInvoiceNumber());
         assertEquals("GB26TEST40051512347366", miraklVoucherEntry.getIban());
     }
+
+    @Test
+    public void testParseMiraklCsvInBatches() throws Exception {
+        URL url = Resources.getResource("paymentvouchers/PaymentVoucher_PayoutShop01.csv");
+        final List<String> lines = Resources.readLines(url, Charsets.UTF_8);
+        final StringBuilder csvFile = new StringBuilder(lines.get(0)).append('\n');
+        for (int i = 0; i < 5; i++) {
+            csvFile.append(lines.get(1).replace("$shopId$", "shop" + i)).append('\n');
+        }
+
+        final Integer batchSize = applicationProperties.getVoucherEntryBatchSize();
+        applicationProperties.setVoucherEntryBatchSize(2);
+        final int stored;
+        try {
+            stored = payoutService.parseMiraklCsv(new StringReader(csvFile.toString()));
+        } finally {
+            applicationProperties.setVoucherEntryBatchSize(batchSize);
+        }
+
+        assertEquals(5, stored);
+        List<MiraklVoucherEntry> all = miraklVoucherEntryRepository.findAll();
+        Assertions.assertThat(all).extracting(MiraklVoucherEntry::getShopId).containsOnly("shop0", "shop1", "shop2", "shop3", "shop4");
+        Assertions.assertThat(all).extracting(MiraklVoucherEntry::getCreatedAt).doesNotContainNull();
+    }
+
+    @Test
+    public void testClaimAndDeleteVoucherEntries() {
+        for (int i = 0; i < 3; i++) {
+            miraklVoucherEntryRepository.save(new MiraklVoucherEntry().shopId("shop" + i).transferAmount("10.00").currencyIsoCode("EUR"));
+        }
+        miraklVoucherEntryRepository.flush();
+
+        final ZonedDateTime now = ZonedDateTime.now();
+        final List<Long> ids = miraklVoucherEntryRepository.findClaimableIds(now, new PageRequest(0, 2));
+        assertEquals(2, ids.size());
+        assertEquals(2, miraklVoucherEntryRepository.claim("run1", now.plusMinutes(60), now, ids));
+        // another payout run which read the same ids does not get them anymore
+        assertEquals(0, miraklVoucherEntryRepository.claim("run2", now.plusMinutes(60), now, ids));
+
+        Assertions.assertThat(miraklVoucherEntryRepository.findByClaimedByOrderByIdAsc("run1")).extracting(MiraklVoucherEntry::getId).containsExactlyElementsOf(ids);
+        Assertions.assertThat(miraklVoucherEntryRepository.findClaimableIds(now, new PageRequest(0, 2))).hasSize(1).doesNotContainAnyElementsOf(ids);
+
+        // once the lease expired the entries can be claimed again
+        Assertions.assertThat(miraklVoucherEntryRepository.findClaimableIds(now.plusMinutes(61), new PageRequest(0, 3))).hasSize(3);
+
+        // only the payout run holding an entry can renew its lease
+        assertEquals(1, miraklVoucherEntryRepository.renewClaim(ids.get(0), "run1", now.plusMinutes(90)));
+        assertEquals(0, miraklVoucherEntryRepository.renewClaim(ids.get(1), "run2", now.plusMinutes(90)));
+        Assertions.assertThat(miraklVoucherEntryRepository.findClaimableIds(now.plusMinutes(61), new PageRequest(0, 3))).hasSize(2).doesNotContain(ids.get(0));
+
+        // a paid out entry is neither claimed nor renewed again, and only paid out entries are deleted
+        assertEquals(1, miraklVoucherEntryRepository.markProcessed(ids.get(0)));
+        assertEquals(0, miraklVoucherEntryRepository.renewClaim(ids.get(0), "run1", now.plusMinutes(90)));
+        Assertions.assertThat(miraklVoucherEntryRepository.findClaimableIds(now.plusMinutes(91), new PageRequest(0, 3))).hasSize(2).doesNotContain(ids.get(0));
+
+        assertEquals(0, miraklVoucherEntryRepository.deleteProcessedClaimedBy("run2"));
+
+        // the paid out entries of an interrupted run are settled by a later run once the lease expired
+        assertEquals(0, miraklVoucherEntryRepository.claimProcessed("run3", now.plusMinutes(200), now));
+        assertEquals(1, miraklVoucherEntryRepository.claimProcessed("run3", now.plusMinutes(200), now.plusMinutes(91)));
+        Assertions.assertThat(miraklVoucherEntryRepository.findByClaimedByAndProcessedTrueOrderByIdAsc("run3")).extracting(MiraklVoucherEntry::getId).containsExactly(ids.get(0));
+        assertEquals(0, miraklVoucherEntryRepository.deleteProcessedClaimedBy("run1"));
+        assertEquals(1, miraklVoucherEntryRepository.deleteProcessedClaimedBy("run3"));
+        Assertions.assertThat(miraklVoucherEntryRepository.findAll()).extracting(MiraklVoucherEntry::getShopId).containsOnly("shop1", "shop2");
+    }
 }
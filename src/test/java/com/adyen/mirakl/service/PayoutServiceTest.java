@@ -22,16 +22,29 @@
 
 package com.adyen.mirakl.service;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.AdyenPayoutError;
 import com.adyen.mirakl.domain.MiraklVoucherEntry;
 import com.adyen.mirakl.repository.AdyenPayoutErrorRepository;
+import com.adyen.mirakl.repository.MiraklVoucherEntryRepository;
+import com.adyen.model.Amount;
 import com.adyen.model.marketpay.AccountHolderDetails;
 import com.adyen.model.marketpay.BankAccountDetail;
 import com.adyen.model.marketpay.GetAccountHolderRequest;
@@ -42,12 +55,23 @@ import com.adyen.model.marketpay.TransferFundsRequest;
 import com.adyen.service.Account;
 import com.adyen.service.Fund;
 import com.adyen.service.exception.ApiException;
+import com.adyen.util.Util;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class PayoutServiceTest {
@@ -64,6 +88,9 @@ public class PayoutServiceTest {
     @Mock
     private AdyenPayoutErrorRepository adyenPayoutErrorRepository;
 
+    @Mock
+    private MiraklVoucherEntryRepository miraklVoucherEntryRepositoryMock;
+
     @Captor
     private ArgumentCaptor<GetAccountHolderRequest> accountHolderRequestCaptor;
 
@@ -73,6 +100,24 @@ public class PayoutServiceTest {
     @Captor
     private ArgumentCaptor<PayoutAccountHolderRequest> payoutAccountHolderRequestCaptor;
 
+    @Captor
+    private ArgumentCaptor<String> payoutRunCaptor;
+
+    @Captor
+    private ArgumentCaptor<ZonedDateTime> claimedUntilCaptor;
+
+    @Before
+    public void setUp() {
+        setField(payoutService, "accountHolderService", new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager()));
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setPayoutLeaseMinutes(60);
+        applicationProperties.setPayoutChunkSize(2);
+        setField(payoutService, "applicationProperties", applicationProperties);
+        setField(payoutService, "payoutExecutor", MoreExecutors.directExecutor());
+        setField(payoutService, "payoutToLiableAccountByVoucher", false);
+        when(miraklVoucherEntryRepositoryMock.renewClaim(anyLong(), anyString(), any(ZonedDateTime.class))).thenReturn(1);
+    }
+
     @Test
     public void testGetBankAccountUUID() {
         GetAccountHolderResponse getAccountHolderResponse = getResponseWithBankDetails();
@@ -190,4 +235,253 @@ public class PayoutServiceTest {
         // We shouldn't retry on HTTP 500 (Internal Server Error) from Adyen
         verify(adyenPayoutErrorRepository, never()).save(any(AdyenPayoutError.class));
     }
+
+    @Test
+    public void shouldPayOutClaimedVoucherEntriesChunkByChunk() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        PayoutAccountHolderResponse payoutAccountHolderResponse = new PayoutAccountHolderResponse();
+        payoutAccountHolderResponse.setPspReference("pspReference");
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(payoutAccountHolderResponse);
+
+        List<MiraklVoucherEntry> firstChunk = ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"), voucherEntry(2L, "shop-2", "invoice-2"));
+        List<MiraklVoucherEntry> secondChunk = ImmutableList.of(voucherEntry(3L, "shop-1", "invoice-3"));
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L),
+                                                                                                                           ImmutableList.of(3L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(2, 1);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(firstChunk, secondChunk);
+
+        ZonedDateTime before = ZonedDateTime.now();
+        payoutService.processMiraklVoucherEntries();
+
+        verify(miraklVoucherEntryRepositoryMock).claim(payoutRunCaptor.capture(), claimedUntilCaptor.capture(), any(ZonedDateTime.class), eq(ImmutableList.of(1L, 2L)));
+        verify(miraklVoucherEntryRepositoryMock).claim(eq(payoutRunCaptor.getValue()), any(ZonedDateTime.class), any(ZonedDateTime.class), eq(ImmutableList.of(3L)));
+        assertThat(claimedUntilCaptor.getValue().isBefore(before.plusMinutes(60))).isFalse();
+        verify(miraklVoucherEntryRepositoryMock, times(3)).findClaimableIds(any(ZonedDateTime.class), eq(new PageRequest(0, 2)));
+
+        List<String> invoiceNumbers = payoutAccountHolderRequestCaptor.getAllValues().stream().map(PayoutAccountHolderRequest::getMerchantReference).collect(Collectors.toList());
+        assertThat(invoiceNumbers).containsExactly("invoice-1", "invoice-2", "invoice-3");
+        verify(miraklVoucherEntryRepositoryMock, times(2)).deleteProcessedClaimedBy(payoutRunCaptor.getValue());
+        verify(miraklVoucherEntryRepositoryMock).markProcessed(1L);
+        verify(miraklVoucherEntryRepositoryMock).markProcessed(2L);
+        verify(miraklVoucherEntryRepositoryMock).markProcessed(3L);
+        verify(miraklVoucherEntryRepositoryMock, never()).delete(any(MiraklVoucherEntry.class));
+        verify(miraklVoucherEntryRepositoryMock).renewClaim(eq(1L), eq(payoutRunCaptor.getValue()), any(ZonedDateTime.class));
+        verify(miraklVoucherEntryRepositoryMock).renewClaim(eq(2L), eq(payoutRunCaptor.getValue()), any(ZonedDateTime.class));
+        verify(miraklVoucherEntryRepositoryMock).renewClaim(eq(3L), eq(payoutRunCaptor.getValue()), any(ZonedDateTime.class));
+    }
+
+    @Test
+    public void shouldSkipVoucherEntriesWhoseLeaseWasTakenOver() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", true);
+        setField(payoutService, "liableAccountCode", "liable-account");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        List<MiraklVoucherEntry> chunk = ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"), voucherEntry(2L, "shop-2", "invoice-2"));
+        chunk.get(0).setTotalChargedAmount("0.10");
+        chunk.get(0).setTotalChargedAmountVat("0.02");
+        chunk.get(1).setTotalChargedAmount("1.00");
+        chunk.get(1).setTotalChargedAmountVat("0.20");
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(2);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(chunk);
+        when(miraklVoucherEntryRepositoryMock.renewClaim(eq(2L), anyString(), any(ZonedDateTime.class))).thenReturn(0);
+
+        payoutService.processMiraklVoucherEntries();
+
+        List<String> merchantReferences = payoutAccountHolderRequestCaptor.getAllValues()
+                                                                          .stream()
+                                                                          .filter(request -> !"liable-account".equals(request.getAccountCode()))
+                                                                          .map(PayoutAccountHolderRequest::getMerchantReference)
+                                                                          .collect(Collectors.toList());
+        assertThat(merchantReferences).containsExactly("invoice-1");
+        List<Amount> commissionAmounts = payoutAccountHolderRequestCaptor.getAllValues()
+                                                                         .stream()
+                                                                         .filter(request -> "liable-account".equals(request.getAccountCode()))
+                                                                         .map(PayoutAccountHolderRequest::getAmount)
+                                                                         .collect(Collectors.toList());
+        assertThat(commissionAmounts).containsExactly(Util.createAmount("0.12", "EUR"));
+        verify(miraklVoucherEntryRepositoryMock).markProcessed(1L);
+        verify(miraklVoucherEntryRepositoryMock, never()).markProcessed(2L);
+    }
+
+    @Test
+    public void shouldMarkEachVoucherEntryProcessedRightAfterItsPayout() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenReturn(new PayoutAccountHolderResponse());
+
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(2);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"),
+                                                                                                                   voucherEntry(2L, "shop-1", "invoice-2")));
+
+        payoutService.processMiraklVoucherEntries();
+
+        InOrder inOrder = inOrder(adyenFundServiceMock, miraklVoucherEntryRepositoryMock);
+        inOrder.verify(adyenFundServiceMock).payoutAccountHolder(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).markProcessed(1L);
+        inOrder.verify(adyenFundServiceMock).payoutAccountHolder(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).markProcessed(2L);
+        inOrder.verify(miraklVoucherEntryRepositoryMock).deleteProcessedClaimedBy(anyString());
+    }
+
+    @Test
+    public void shouldPayOutCommissionsOncePerCurrencyBeforeDeletingTheChunk() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", true);
+        setField(payoutService, "liableAccountCode", "liable-account");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        List<MiraklVoucherEntry> firstChunk = ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1").currencyIsoCode("GBP"), voucherEntry(2L, "shop-2", "invoice-2"));
+        List<MiraklVoucherEntry> secondChunk = ImmutableList.of(voucherEntry(3L, "shop-1", "invoice-3"), voucherEntry(4L, "shop-3", "invoice-4").currencyIsoCode("GBP"));
+        firstChunk.get(0).setTotalChargedAmount("0.10");
+        firstChunk.get(0).setTotalChargedAmountVat("0.02");
+        firstChunk.get(1).setTotalChargedAmount("0.10");
+        firstChunk.get(1).setTotalChargedAmountVat("0.20");
+        secondChunk.get(0).setTotalChargedAmount("1.00");
+        secondChunk.get(0).setTotalChargedAmountVat("invalid");
+        secondChunk.get(1).setTotalChargedAmount("2.50");
+        secondChunk.get(1).setTotalChargedAmountVat("0.50");
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L),
+                                                                                                                           ImmutableList.of(3L, 4L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(2);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(firstChunk, secondChunk);
+
+        payoutService.processMiraklVoucherEntries();
+
+        List<Amount> commissionAmounts = payoutAccountHolderRequestCaptor.getAllValues()
+                                                                  .stream()
+                                                                  .filter(request -> "liable-account".equals(request.getAccountCode()))
+                                                                  .map(PayoutAccountHolderRequest::getAmount)
+                                                                  .collect(Collectors.toList());
+        assertThat(commissionAmounts).containsExactly(Util.createAmount("0.12", "GBP"), Util.createAmount("0.30", "EUR"), Util.createAmount("3.00", "GBP"));
+        InOrder inOrder = inOrder(adyenFundServiceMock, miraklVoucherEntryRepositoryMock);
+        inOrder.verify(adyenFundServiceMock, times(4)).payoutAccountHolder(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).deleteProcessedClaimedBy(anyString());
+        inOrder.verify(adyenFundServiceMock, times(3)).payoutAccountHolder(any());
+        inOrder.verify(miraklVoucherEntryRepositoryMock).deleteProcessedClaimedBy(anyString());
+    }
+
+    @Test
+    public void shouldSettleTheCommissionOfAnInterruptedPayoutRun() throws Exception {
+        setField(payoutService, "payoutToLiableAccountByVoucher", true);
+        setField(payoutService, "liableAccountCode", "liable-account");
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        List<MiraklVoucherEntry> paidOutBeforeInterruption = ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"), voucherEntry(2L, "shop-2", "invoice-2"));
+        paidOutBeforeInterruption.get(0).setTotalChargedAmount("0.10");
+        paidOutBeforeInterruption.get(0).setTotalChargedAmountVat("0.02");
+        paidOutBeforeInterruption.get(1).setTotalChargedAmount("1.00");
+        paidOutBeforeInterruption.get(1).setTotalChargedAmountVat("0.20");
+        when(miraklVoucherEntryRepositoryMock.claimProcessed(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class))).thenReturn(2);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByAndProcessedTrueOrderByIdAsc(anyString())).thenReturn(paidOutBeforeInterruption);
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(Collections.emptyList());
+
+        payoutService.processMiraklVoucherEntries();
+
+        assertThat(payoutAccountHolderRequestCaptor.getAllValues()).extracting(PayoutAccountHolderRequest::getAmount).containsExactly(Util.createAmount("1.32", "EUR"));
+        verify(miraklVoucherEntryRepositoryMock).claimProcessed(payoutRunCaptor.capture(), any(ZonedDateTime.class), any(ZonedDateTime.class));
+        verify(miraklVoucherEntryRepositoryMock).deleteProcessedClaimedBy(payoutRunCaptor.getValue());
+        verify(miraklVoucherEntryRepositoryMock, never()).renewClaim(anyLong(), anyString(), any(ZonedDateTime.class));
+    }
+
+    @Test
+    public void shouldKeepPayingOutWhenAVoucherEntryFails() throws Exception {
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L, 3L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(3);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"),
+                                                                                                                   voucherEntry(2L, "shop-1", "invoice-2"),
+                                                                                                                   voucherEntry(3L, "shop-1", "invoice-3")));
+        when(miraklVoucherEntryRepositoryMock.renewClaim(eq(1L), anyString(), any(ZonedDateTime.class))).thenThrow(new IllegalStateException("database unavailable"));
+        when(miraklVoucherEntryRepositoryMock.markProcessed(2L)).thenThrow(new IllegalStateException("database unavailable"));
+
+        payoutService.processMiraklVoucherEntries();
+
+        assertThat(payoutAccountHolderRequestCaptor.getAllValues()).extracting(PayoutAccountHolderRequest::getMerchantReference).containsExactly("invoice-2", "invoice-3");
+        verify(miraklVoucherEntryRepositoryMock).markProcessed(3L);
+        verify(miraklVoucherEntryRepositoryMock).deleteProcessedClaimedBy(anyString());
+    }
+
+    @Test
+    public void shouldResolveTheAccountHolderOncePerShop() throws Exception {
+        setField(payoutService, "accountHolderService", new AccountHolderService(adyenAccountServiceMock, new NoOpCacheManager()));
+        when(adyenAccountServiceMock.getAccountHolder(accountHolderRequestCaptor.capture())).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(any())).thenReturn(new PayoutAccountHolderResponse());
+
+        List<MiraklVoucherEntry> chunk = ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1"),
+                                                          voucherEntry(2L, "shop-2", "invoice-2"),
+                                                          voucherEntry(3L, "shop-1", "invoice-3"),
+                                                          voucherEntry(4L, "shop-1", "invoice-4"));
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L, 2L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(2);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(chunk);
+
+        payoutService.processMiraklVoucherEntries();
+
+        assertThat(accountHolderRequestCaptor.getAllValues()).extracting("accountHolderCode").containsOnly("shop-1", "shop-2").hasSize(2);
+        verify(adyenFundServiceMock, times(4)).payoutAccountHolder(any());
+    }
+
+    @Test
+    public void shouldLookUpTheAccountHolderAgainWhenThePrefetchFailed() throws Exception {
+        setField(payoutService, "accountHolderService", new AccountHolderService(adyenAccountServiceMock, new NoOpCacheManager()));
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenThrow(new ApiException("timeout", 504)).thenReturn(getResponseWithBankDetails());
+        when(adyenFundServiceMock.payoutAccountHolder(payoutAccountHolderRequestCaptor.capture())).thenReturn(new PayoutAccountHolderResponse());
+
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(1);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(ImmutableList.of(voucherEntry(1L, "shop-1", "invoice-1")));
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(adyenAccountServiceMock, times(2)).getAccountHolder(any());
+        assertEquals("2a421c72-ead7-4ad3-8741-80a0aebb8758", payoutAccountHolderRequestCaptor.getValue().getBankAccountUUID());
+    }
+
+    @Test
+    public void shouldSkipVoucherEntriesClaimedByAnotherPayoutRun() throws Exception {
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L),
+                                                                                                                           Collections.emptyList());
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(0);
+
+        payoutService.processMiraklVoucherEntries();
+
+        verify(miraklVoucherEntryRepositoryMock, never()).findByClaimedByOrderByIdAsc(anyString());
+        verify(miraklVoucherEntryRepositoryMock, never()).deleteProcessedClaimedBy(anyString());
+        verify(adyenFundServiceMock, never()).payoutAccountHolder(any());
+    }
+
+    @Test
+    public void shouldUseANewPayoutRunForEachCall() throws Exception {
+        when(miraklVoucherEntryRepositoryMock.findClaimableIds(any(ZonedDateTime.class), any(Pageable.class))).thenReturn(ImmutableList.of(1L));
+        when(miraklVoucherEntryRepositoryMock.claim(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class), anyListOf(Long.class))).thenReturn(1);
+        when(miraklVoucherEntryRepositoryMock.findByClaimedByOrderByIdAsc(anyString())).thenReturn(Collections.emptyList());
+
+        payoutService.processMiraklVoucherEntries();
+        payoutService.processMiraklVoucherEntries();
+
+        verify(miraklVoucherEntryRepositoryMock, times(2)).findByClaimedByOrderByIdAsc(payoutRunCaptor.capture());
+        assertThat(payoutRunCaptor.getAllValues().get(0)).isNotEqualTo(payoutRunCaptor.getAllValues().get(1));
+    }
+
+    private static MiraklVoucherEntry voucherEntry(Long id, String shopId, String invoiceNumber) {
+        MiraklVoucherEntry miraklVoucherEntry = new MiraklVoucherEntry().shopId(shopId)
+                                                                        .transferAmount("10.00")
+                                                                        .currencyIsoCode("EUR")
+                                                                        .iban("GB29NWBK60161331926819")
+                                                                        .invoiceNumber(invoiceNumber)
+                                                                        .shopName("shop-name");
+        miraklVoucherEntry.setId(id);
+        return miraklVoucherEntry;
+    }
 }
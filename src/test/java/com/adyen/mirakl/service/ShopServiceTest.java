@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.assertj.core.api.Assertions;
@@ -38,9 +39,12 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import com.adyen.mirakl.MiraklShopFactory;
 import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.domain.MiraklDelta;
 import com.adyen.mirakl.startup.MiraklStartupValidator;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
 import com.adyen.model.Address;
 import com.adyen.model.Amount;
 import com.adyen.model.Name;
@@ -51,6 +55,7 @@ import com.adyen.model.marketpay.CreateAccountHolderRequest;
 import com.adyen.model.marketpay.CreateAccountHolderResponse;
 import com.adyen.model.marketpay.DeleteBankAccountRequest;
 import com.adyen.model.marketpay.DeleteBankAccountResponse;
+import com.adyen.model.marketpay.GetAccountHolderRequest;
 import com.adyen.model.marketpay.GetAccountHolderResponse;
 import com.adyen.model.marketpay.IndividualDetails;
 import com.adyen.model.marketpay.ShareholderContact;
@@ -60,6 +65,7 @@ import com.adyen.model.marketpay.notification.CompensateNegativeBalanceNotificat
 import com.adyen.service.Account;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.mirakl.client.mmp.domain.accounting.document.MiraklAccountingDocumentType;
 import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
 import com.mirakl.client.mmp.domain.common.currency.MiraklIsoCurrencyCode;
@@ -138,6 +144,12 @@ public class ShopServiceTest {
     @Before
     public void setup() throws Exception {
         shopService.setHouseNumberPatterns(ImmutableMap.of("NL", Pattern.compile("\\s([a-zA-Z]*\\d+[a-zA-Z]*)$")));
+        shopService.setShopSyncExecutor(MoreExecutors.directExecutor());
+        shopService.setAccountHolderService(new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager()));
+        shopService.setMiraklShopService(new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0), new ConcurrentMapCacheManager()));
+        shopService.setMiraklPrefetchExecutor(MoreExecutors.directExecutor());
+        shopService.setAccountLookupExecutor(MoreExecutors.directExecutor());
+        when(deltaService.getShopCheckpoint()).thenReturn(Optional.empty());
 
         shop = new MiraklShop();
         miraklShopUS = new MiraklShop();
@@ -326,6 +338,37 @@ public class ShopServiceTest {
         Assertions.assertThat(shareHoldersUK).containsExactlyInAnyOrder(shareHolderMockUK);
     }
 
+    @Test
+    public void shouldResumeFromShopCheckpoint() throws Exception {
+        final ZonedDateTime checkpointDelta = ZonedDateTime.now().minusHours(1);
+        when(deltaService.getShopCheckpoint()).thenReturn(Optional.of(new MiraklDelta().shopCheckpointOffset(5).shopCheckpointDelta(checkpointDelta)));
+
+        MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(new ArrayList<>());
+        miraklShops.setTotalCount(5L);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
+
+        shopService.processUpdatedShops();
+
+        assertEquals(5L, miraklGetShopsRequestCaptor.getValue().getOffset());
+        verify(deltaService).updateShopDelta(checkpointDelta);
+    }
+
+    @Test
+    public void shouldStoreShopCheckpointAfterEveryPage() throws Exception {
+        MiraklShop pageShop = new MiraklShop();
+        pageShop.setId("pageShop");
+        MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(ImmutableList.of(pageShop));
+        miraklShops.setTotalCount(2L);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenReturn(miraklShops);
+
+        shopService.processUpdatedShops();
+
+        verify(deltaService).updateShopCheckpoint(eq(1), any(ZonedDateTime.class));
+        verify(deltaService).updateShopDelta(any(ZonedDateTime.class));
+    }
+
     @Test
     public void testRetrieveUpdatedShopsPagination() throws Exception {
         //Response contains one shop and total_count = 2
@@ -338,9 +381,10 @@ public class ShopServiceTest {
         when(deltaService.getShopDelta()).thenReturn(dateMock);
         when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops);
 
-        List<MiraklShop> updatedShops = shopService.getUpdatedShops();
+        List<MiraklShop> updatedShops = new ArrayList<>();
+        shopService.streamUpdatedShops(0).forEachRemaining(updatedShops::addAll);
 
-        verify(deltaService, times(2)).getShopDelta();
+        verify(deltaService).getShopDelta();
 
         assertEquals(2, updatedShops.size());
 
@@ -536,12 +580,66 @@ public class ShopServiceTest {
         getAccountHolderResponse.setAccountHolderCode("123321");
         when(adyenAccountServiceMock.getAccountHolder(any())).thenReturn(getAccountHolderResponse);
         when(miraklMarketplacePlatformOperatorApiClientMock.createManualAccountingDocument(any())).thenReturn(miraklCreatedManualAccountingDocumentsMock);
+        when(applicationProperties.getManualAccountingDocumentBatchSize()).thenReturn(50);
+
+        List<MiraklCreatedManualAccountingDocumentReturn> results = shopService.processCompensateNegativeBalance(ImmutableList.of(compensateNegativeBalanceNotificationRecord), "123456789");
 
-        MiraklCreatedManualAccountingDocuments miraklCreatedManualAccountingDocuments = shopService.processCompensateNegativeBalance(compensateNegativeBalanceNotificationRecord, "123456789");
+        assertEquals(1, results.size());
+        assertEquals(MiraklAccountingDocumentType.MANUAL_CREDIT, results.get(0).getManualAccountingDocument().getType());
+        assertEquals(currency, results.get(0).getManualAccountingDocument().getCurrencyIsoCode().toString());
+        assertNull(results.get(0).getManualAccountingDocumentError());
+    }
 
-        assertEquals(MiraklAccountingDocumentType.MANUAL_CREDIT, miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns().get(0).getManualAccountingDocument().getType());
-        assertEquals(currency, miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns().get(0).getManualAccountingDocument().getCurrencyIsoCode().toString());
-        assertNull(miraklCreatedManualAccountingDocuments.getManualAccountingDocumentReturns().get(0).getManualAccountingDocumentError());
+    @Test
+    public void shouldCompensateNegativeBalancesInBatches() throws Exception {
+        Amount amount = new Amount();
+        amount.setCurrency("EUR");
+        amount.setValue(-100L);
+        final List<CompensateNegativeBalanceNotificationRecord> records = ImmutableList.of(compensateNegativeBalanceRecord("account1", amount),
+                                                                                           compensateNegativeBalanceRecord("unknownAccount", amount),
+                                                                                           compensateNegativeBalanceRecord("account2", amount),
+                                                                                           compensateNegativeBalanceRecord("account1", amount));
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenAnswer(invocation -> {
+            final String accountCode = invocation.getArgumentAt(0, GetAccountHolderRequest.class).getAccountCode();
+            final GetAccountHolderResponse response = new GetAccountHolderResponse();
+            response.setAccountHolderCode("unknownAccount".equals(accountCode) ? "" : accountCode.replace("account", ""));
+            return response;
+        });
+        when(miraklMarketplacePlatformOperatorApiClientMock.createManualAccountingDocument(any())).thenReturn(createManualCreditDocuments("first", "second"), createManualCreditDocuments("third"));
+        when(applicationProperties.getManualAccountingDocumentBatchSize()).thenReturn(2);
+
+        final List<MiraklCreatedManualAccountingDocumentReturn> results = shopService.processCompensateNegativeBalance(records, "123456789");
+
+        assertEquals(4, results.size());
+        assertEquals("first", results.get(0).getManualAccountingDocument().getTechnicalId());
+        assertNull(results.get(1));
+        assertEquals("second", results.get(2).getManualAccountingDocument().getTechnicalId());
+        assertEquals("third", results.get(3).getManualAccountingDocument().getTechnicalId());
+        verify(adyenAccountServiceMock, times(3)).getAccountHolder(any());
+        verify(miraklMarketplacePlatformOperatorApiClientMock, times(2)).createManualAccountingDocument(any());
+    }
+
+    private static CompensateNegativeBalanceNotificationRecord compensateNegativeBalanceRecord(String accountCode, Amount amount) {
+        CompensateNegativeBalanceNotificationRecord record = new CompensateNegativeBalanceNotificationRecord();
+        record.setAccountCode(accountCode);
+        record.setAmount(amount);
+        record.setTransferDate(new Date());
+        return record;
+    }
+
+    private static MiraklCreatedManualAccountingDocuments createManualCreditDocuments(String... technicalIds) {
+        List<MiraklCreatedManualAccountingDocumentReturn> miraklCreatedManualAccountingDocumentReturnList = new ArrayList<>();
+        for (String technicalId : technicalIds) {
+            MiraklInvoice miraklCreditInvoice = new MiraklInvoice();
+            miraklCreditInvoice.setType(MiraklAccountingDocumentType.MANUAL_CREDIT);
+            miraklCreditInvoice.setTechnicalId(technicalId);
+            MiraklCreatedManualAccountingDocumentReturn miraklCreatedManualAccountingDocumentReturn = new MiraklCreatedManualAccountingDocumentReturn();
+            miraklCreatedManualAccountingDocumentReturn.setManualAccountingDocument(miraklCreditInvoice);
+            miraklCreatedManualAccountingDocumentReturnList.add(miraklCreatedManualAccountingDocumentReturn);
+        }
+        MiraklCreatedManualAccountingDocuments miraklCreatedManualAccountingDocuments = new MiraklCreatedManualAccountingDocuments();
+        miraklCreatedManualAccountingDocuments.setManualAccountingDocumentReturns(miraklCreatedManualAccountingDocumentReturnList);
+        return miraklCreatedManualAccountingDocuments;
     }
 
     private MiraklCreatedManualAccountingDocuments createManualCreditDocument(Amount amount) {
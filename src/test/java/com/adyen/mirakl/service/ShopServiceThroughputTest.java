@@ -0,0 +1,199 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import com.adyen.mirakl.config.ApplicationProperties;
+import com.adyen.mirakl.startup.MiraklStartupValidator;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
+import com.adyen.model.marketpay.CreateAccountHolderResponse;
+import com.adyen.model.marketpay.GetAccountHolderResponse;
+import com.adyen.service.Account;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
+import com.mirakl.client.mmp.domain.common.currency.MiraklIsoCurrencyCode;
+import com.mirakl.client.mmp.domain.shop.MiraklContactInformation;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Benchmarks the shop sync against an Adyen Account stub which answers every call after a fixed latency, the stub records how many calls
+ * were in flight at the same time
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ShopServiceThroughputTest {
+
+    private final Logger log = LoggerFactory.getLogger(ShopServiceThroughputTest.class);
+
+    private static final int NUMBER_OF_SHOPS = 40;
+    private static final int SHOP_SYNC_THREADS = 8;
+    private static final long ADYEN_LATENCY_MILLIS = 25;
+
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+    private final AtomicInteger peakInFlightCalls = new AtomicInteger();
+    private volatile CountDownLatch concurrentCalls;
+
+    @InjectMocks
+    private ShopService shopService;
+
+    @Mock
+    private ApplicationProperties applicationProperties;
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+    @Mock
+    private Account adyenAccountServiceMock;
+    @Mock
+    private DeltaService deltaService;
+    @Mock
+    private ShareholderMappingService shareholderMappingService;
+    @Mock
+    private DocService docServiceMock;
+
+    @Before
+    public void setup() throws Exception {
+        shopService.setHouseNumberPatterns(ImmutableMap.of("NL", Pattern.compile("\\s([a-zA-Z]*\\d+[a-zA-Z]*)$")));
+        shopService.setMiraklPrefetchExecutor(MoreExecutors.directExecutor());
+        shopService.setAccountHolderService(new AccountHolderService(adyenAccountServiceMock, new ConcurrentMapCacheManager()));
+        shopService.setMiraklShopService(new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0), new ConcurrentMapCacheManager()));
+        when(deltaService.getShopCheckpoint()).thenReturn(Optional.empty());
+
+        MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(createShops());
+        miraklShops.setTotalCount((long) NUMBER_OF_SHOPS);
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(any())).thenReturn(miraklShops);
+
+        GetAccountHolderResponse unknownAccountHolder = new GetAccountHolderResponse();
+        unknownAccountHolder.setAccountHolderCode("");
+        when(adyenAccountServiceMock.getAccountHolder(any())).thenAnswer(withAdyenLatency(unknownAccountHolder));
+        when(adyenAccountServiceMock.createAccountHolder(any())).thenAnswer(withAdyenLatency(new CreateAccountHolderResponse()));
+    }
+
+    @Test
+    public void shouldSyncShopsSeriallyOnADirectExecutor() {
+        final long serialMillis = timeShopSync(MoreExecutors.directExecutor());
+
+        log.info("Serial shop sync: {} shops/s", throughput(serialMillis));
+        assertThat(peakInFlightCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSyncShopsOnEveryThread() {
+        // every call waits until all threads have called Adyen, so the pool can only finish by running them at the same time
+        concurrentCalls = new CountDownLatch(SHOP_SYNC_THREADS);
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(SHOP_SYNC_THREADS);
+        executor.setMaxPoolSize(SHOP_SYNC_THREADS);
+        executor.initialize();
+        final long parallelMillis;
+        try {
+            parallelMillis = timeShopSync(executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        log.info("Parallel shop sync with {} threads: {} shops/s", SHOP_SYNC_THREADS, throughput(parallelMillis));
+        assertThat(concurrentCalls.getCount()).isZero();
+        assertThat(peakInFlightCalls.get()).isEqualTo(SHOP_SYNC_THREADS);
+    }
+
+    private long timeShopSync(Executor executor) {
+        shopService.setShopSyncExecutor(executor);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        shopService.processUpdatedShops();
+        return stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    }
+
+    private static long throughput(long elapsedMillis) {
+        return NUMBER_OF_SHOPS * 1000L / Math.max(elapsedMillis, 1);
+    }
+
+    private <T> Answer<T> withAdyenLatency(T response) {
+        return invocation -> {
+            final int inFlight = inFlightCalls.incrementAndGet();
+            peakInFlightCalls.accumulateAndGet(inFlight, Math::max);
+            try {
+                final CountDownLatch latch = concurrentCalls;
+                if (latch != null) {
+                    latch.countDown();
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+                Thread.sleep(ADYEN_LATENCY_MILLIS);
+                return response;
+            } finally {
+                inFlightCalls.decrementAndGet();
+            }
+        };
+    }
+
+    private static List<MiraklShop> createShops() {
+        MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue legalEntity = new MiraklAdditionalFieldValue.MiraklValueListAdditionalFieldValue();
+        legalEntity.setCode(String.valueOf(MiraklStartupValidator.CustomMiraklFields.ADYEN_LEGAL_ENTITY_TYPE));
+        legalEntity.setValue(MiraklStartupValidator.AdyenLegalEntityType.INDIVIDUAL.toString());
+
+        MiraklContactInformation contactInformation = new MiraklContactInformation();
+        contactInformation.setEmail("email");
+        contactInformation.setFirstname("firstName");
+        contactInformation.setLastname("lastName");
+        contactInformation.setCountry("NLD");
+        contactInformation.setCivility("Mrs");
+        contactInformation.setCity("city");
+        contactInformation.setStreet1("Kosterpark 610b");
+        contactInformation.setZipCode("zipCode");
+
+        List<MiraklShop> shops = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_SHOPS; i++) {
+            MiraklShop shop = new MiraklShop();
+            shop.setId(String.valueOf(i));
+            shop.setContactInformation(contactInformation);
+            shop.setAdditionalFieldValues(ImmutableList.of(legalEntity));
+            shop.setCurrencyIsoCode(MiraklIsoCurrencyCode.EUR);
+            shops.add(shop);
+        }
+        return shops;
+    }
+}
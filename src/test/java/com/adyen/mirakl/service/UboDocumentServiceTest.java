@@ -31,6 +31,7 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import com.adyen.mirakl.domain.DocError;
 import com.adyen.mirakl.domain.DocRetry;
 import com.adyen.mirakl.domain.ShareholderMapping;
@@ -38,6 +39,7 @@ import com.adyen.mirakl.repository.DocErrorRepository;
 import com.adyen.mirakl.repository.DocRetryRepository;
 import com.adyen.mirakl.repository.ShareholderMappingRepository;
 import com.adyen.mirakl.service.dto.UboDocumentDTO;
+import com.adyen.mirakl.service.util.MiraklShopBatchLoader;
 import com.adyen.model.marketpay.DocumentDetail;
 import com.google.common.collect.ImmutableList;
 import com.mirakl.client.mmp.domain.common.MiraklAdditionalFieldValue;
@@ -52,6 +54,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UboDocumentServiceTest {
@@ -73,7 +76,7 @@ public class UboDocumentServiceTest {
     @Mock
     private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
     @Mock
-    private MiraklShops miraklShops1, miraklShops2;
+    private MiraklShops miraklShops1;
     @Mock
     private MiraklShop miraklShop1, miraklShop2;
     @Mock
@@ -87,6 +90,7 @@ public class UboDocumentServiceTest {
     @Before
     public void setUp() {
         uboDocumentService.setMaxUbos(4);
+        setField(uboDocumentService, "miraklShopService", new MiraklShopService(new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0), new ConcurrentMapCacheManager()));
 
         //shop 1
         when(miraklShopDocument1.getTypeCode()).thenReturn("adyen-ubo1-photoid");//front passport used
@@ -114,9 +118,10 @@ public class UboDocumentServiceTest {
         // 1 front id  & 1 back id                                          - shop 2 ubo 1
         // 1 front driving licence & 1 rear driving licence                 - shop 2 ubo 2
 
-        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1).thenReturn(miraklShops2);
-        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1));
-        when(miraklShops2.getShops()).thenReturn(ImmutableList.of(miraklShop2));
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(miraklShops1);
+        when(miraklShops1.getShops()).thenReturn(ImmutableList.of(miraklShop1, miraklShop2));
+        when(miraklShop1.getId()).thenReturn("shop1");
+        when(miraklShop2.getId()).thenReturn("shop2");
         when(miraklShop1.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField1));
         when(miraklShop2.getAdditionalFieldValues()).thenReturn(ImmutableList.of(miraklAddtionalField2, miraklAddtionalField3));
         when(miraklAddtionalField1.getCode()).thenReturn("adyen-ubo1-photoidtype");
@@ -144,9 +149,8 @@ public class UboDocumentServiceTest {
                                                                                                  miraklShopDocument6));
 
         List<MiraklGetShopsRequest> requestsToMirakl = miraklGetShopsRequestCaptor.getAllValues();
-        assertThat(requestsToMirakl.size()).isEqualTo(3);
-        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1");
-        assertThat(requestsToMirakl.get(1).getShopIds()).containsOnly("shop2");
+        assertThat(requestsToMirakl.size()).isEqualTo(1);
+        assertThat(requestsToMirakl.get(0).getShopIds()).containsOnly("shop1", "shop2");
         assertThat(result.size()).isEqualTo(5);
         assertThat(result.get(0).getShareholderCode()).isEqualTo("shareholderCode1");
         assertThat(result.get(0).getMiraklShopDocument().getShopId()).isEqualTo("shop1");
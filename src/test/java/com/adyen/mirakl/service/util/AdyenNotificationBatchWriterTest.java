@@ -0,0 +1,167 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import com.adyen.mirakl.domain.AdyenNotification;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdyenNotificationBatchWriterTest {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setup() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:adyenNotificationBatchWriter;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE adyen_notification (id BIGINT AUTO_INCREMENT PRIMARY KEY, raw_adyen_notification CLOB, processed BOOLEAN NOT NULL, "
+                             + "created_at TIMESTAMP, attempts INT DEFAULT 0 NOT NULL, event_type VARCHAR(255), account_holder_code VARCHAR(255), "
+                             + "dispatched_until TIMESTAMP, dispatched_by VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE adyen_notification_dedupe (dedupe_key VARCHAR(255) PRIMARY KEY, created_at TIMESTAMP NOT NULL)");
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE adyen_notification");
+        jdbcTemplate.execute("DROP TABLE adyen_notification_dedupe");
+    }
+
+    @Test
+    public void shouldStoreConcurrentNotificationsTogether() throws Exception {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 200);
+        final ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            final List<CompletableFuture<Long>> ids = IntStream.range(0, 10)
+                                                               .mapToObj(i -> CompletableFuture.supplyAsync(() -> writer.append(notification("notification" + i), "psp" + i + ":EVENT"), executor))
+                                                               .collect(Collectors.toList());
+
+            for (int i = 0; i < ids.size(); i++) {
+                final Long id = ids.get(i).get(5, TimeUnit.SECONDS);
+                final Map<String, Object> row = jdbcTemplate.queryForMap("SELECT raw_adyen_notification, processed, created_at, attempts, event_type, account_holder_code FROM adyen_notification WHERE id = ?", id);
+                assertThat(row.get("raw_adyen_notification")).isEqualTo("notification" + i);
+                assertThat(row.get("processed")).isEqualTo(false);
+                assertThat(row.get("created_at")).isNotNull();
+                assertThat(row.get("attempts")).isEqualTo(0);
+                assertThat(row.get("event_type")).isEqualTo("ACCOUNT_HOLDER_VERIFICATION");
+                assertThat(row.get("account_holder_code")).isEqualTo("shop1");
+            }
+            assertThat(ids.stream().map(CompletableFuture::join).distinct().count()).isEqualTo(10);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldStoreTheLeaseOfTheNotification() {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 0);
+        final NotificationLease notificationLease = new NotificationLease(3600);
+
+        final Long id = writer.append(notificationLease.take(notification("notification")), null);
+
+        final Map<String, Object> row = jdbcTemplate.queryForMap("SELECT dispatched_until, dispatched_by FROM adyen_notification WHERE id = ?", id);
+        assertThat(row.get("dispatched_by")).isEqualTo(notificationLease.getOwner());
+        assertThat(((Timestamp) row.get("dispatched_until")).toInstant().isAfter(Instant.now().plus(59, ChronoUnit.MINUTES))).isTrue();
+    }
+
+    @Test
+    public void shouldStoreSingleNotificationWithoutWaiting() {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 0);
+
+        final Long id = writer.append(notification("notification"), null);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT raw_adyen_notification FROM adyen_notification WHERE id = ?", String.class, id)).isEqualTo("notification");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWhenNotificationCannotBeStored() {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 0);
+        jdbcTemplate.execute("DROP TABLE adyen_notification");
+        jdbcTemplate.execute("CREATE TABLE adyen_notification (id BIGINT AUTO_INCREMENT PRIMARY KEY)");
+
+        writer.append(notification("notification"), null);
+    }
+
+    @Test
+    public void shouldSkipNotificationsAlreadyStored() {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 0);
+
+        final Long id = writer.append(notification("notification"), "psp:EVENT");
+        final Long duplicateId = writer.append(notification("notification"), "psp:EVENT");
+
+        assertThat(id).isNotNull();
+        assertThat(duplicateId).isNull();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM adyen_notification", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSkipDuplicatesWithinAndAcrossBatches() throws Exception {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 4, 5000);
+        writer.append(notification("notification0"), "psp0:EVENT");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<CompletableFuture<Long>> ids = IntStream.of(0, 1, 1, 2)
+                                                               .mapToObj(i -> CompletableFuture.supplyAsync(() -> writer.append(notification("notification" + i), "psp" + i + ":EVENT"), executor))
+                                                               .collect(Collectors.toList());
+
+            final List<Long> storedIds = ids.stream().map(CompletableFuture::join).filter(Objects::nonNull).collect(Collectors.toList());
+            assertThat(storedIds).hasSize(2);
+            final List<String> stored = jdbcTemplate.queryForList("SELECT raw_adyen_notification FROM adyen_notification", String.class);
+            assertThat(stored).hasSize(3);
+            assertThat(stored).containsOnly("notification0", "notification1", "notification2");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRemoveOldDedupeKeys() {
+        final AdyenNotificationBatchWriter writer = new AdyenNotificationBatchWriter(dataSource, 50, 0);
+        writer.append(notification("notification"), "psp:EVENT");
+
+        assertThat(writer.removeDedupeKeysCreatedBefore(Instant.now().minus(1, ChronoUnit.DAYS))).isZero();
+        assertThat(writer.removeDedupeKeysCreatedBefore(Instant.now().plus(1, ChronoUnit.DAYS))).isEqualTo(1);
+        assertThat(writer.append(notification("notification"), "psp:EVENT")).isNotNull();
+    }
+
+    private static AdyenNotification notification(final String rawAdyenNotification) {
+        return new AdyenNotification().rawAdyenNotification(rawAdyenNotification).eventType("ACCOUNT_HOLDER_VERIFICATION").accountHolderCode("shop1");
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CommissionTotalsTest {
+
+    private final Logger log = LoggerFactory.getLogger(CommissionTotalsTest.class);
+
+    private static final int VOUCHERS = 100_000;
+    private static final String[] CURRENCIES = { "EUR", "GBP", "USD", "SEK" };
+
+    @Test
+    public void shouldAddUpExactlyPerCurrency() {
+        final CommissionTotals commissionTotals = new CommissionTotals();
+
+        commissionTotals.add("EUR", "0.1", "0.2");
+        commissionTotals.add("GBP", "10.00", "2.00");
+        commissionTotals.add("EUR", " 0.7 ", "0");
+
+        assertThat(commissionTotals.getTotalByCurrency()).containsOnlyKeys("EUR", "GBP");
+        assertThat(commissionTotals.getTotalByCurrency().get("EUR")).isEqualByComparingTo(new BigDecimal("1.0"));
+        assertThat(commissionTotals.getTotalByCurrency().get("GBP")).isEqualByComparingTo(new BigDecimal("12"));
+    }
+
+    @Test
+    public void shouldRejectInvalidVouchersWithoutChangingTheTotals() {
+        final CommissionTotals commissionTotals = new CommissionTotals();
+        commissionTotals.add("EUR", "1.00", "0.20");
+
+        assertRejected(commissionTotals, "EUR", "abc", "0.20");
+        assertRejected(commissionTotals, "EUR", "1.00", null);
+        assertRejected(commissionTotals, null, "1.00", "0.20");
+
+        assertThat(commissionTotals.getTotalByCurrency()).containsOnlyKeys("EUR");
+        assertThat(commissionTotals.getTotalByCurrency().get("EUR")).isEqualByComparingTo(new BigDecimal("1.20"));
+    }
+
+    @Test
+    public void shouldMatchTheMinorUnitSumsOfManyVouchers() {
+        final List<Voucher> vouchers = vouchers(new Random(42));
+        final Map<String, Long> expectedMinorUnits = new HashMap<>();
+        vouchers.forEach(voucher -> expectedMinorUnits.merge(voucher.currency, voucher.amountMinorUnits + voucher.vatMinorUnits, Long::sum));
+
+        final long start = System.nanoTime();
+        final CommissionTotals commissionTotals = add(vouchers);
+        log.info("Added up {} vouchers in {} ms", VOUCHERS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        assertThat(commissionTotals.getTotalByCurrency()).hasSize(expectedMinorUnits.size());
+        expectedMinorUnits.forEach((currency, minorUnits) ->
+            assertThat(commissionTotals.getTotalByCurrency().get(currency).movePointRight(2).longValueExact()).as(currency).isEqualTo(minorUnits));
+    }
+
+    @Test
+    public void shouldNotDependOnTheOrderOfTheVouchers() {
+        final Random random = new Random(7);
+        final List<Voucher> vouchers = vouchers(random);
+        final Map<String, BigDecimal> totals = add(vouchers).getTotalByCurrency();
+
+        Collections.shuffle(vouchers, random);
+
+        final Map<String, BigDecimal> shuffledTotals = add(vouchers).getTotalByCurrency();
+        assertThat(shuffledTotals).containsOnlyKeys(totals.keySet().toArray(new String[0]));
+        totals.forEach((currency, total) -> assertThat(shuffledTotals.get(currency)).as(currency).isEqualByComparingTo(total));
+    }
+
+    private static void assertRejected(final CommissionTotals commissionTotals, final String currency, final String amount, final String vat) {
+        try {
+            commissionTotals.add(currency, amount, vat);
+            fail("Voucher should have been rejected: " + currency + " " + amount + " " + vat);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static CommissionTotals add(final List<Voucher> vouchers) {
+        final CommissionTotals commissionTotals = new CommissionTotals();
+        vouchers.forEach(voucher -> commissionTotals.add(voucher.currency, voucher.amount(), voucher.vat()));
+        return commissionTotals;
+    }
+
+    private static List<Voucher> vouchers(final Random random) {
+        final List<Voucher> vouchers = new ArrayList<>(VOUCHERS);
+        for (int i = 0; i < VOUCHERS; i++) {
+            vouchers.add(new Voucher(CURRENCIES[random.nextInt(CURRENCIES.length)], random.nextInt(10_000_000), random.nextInt(2_000_000)));
+        }
+        return vouchers;
+    }
+
+    private static class Voucher {
+
+        private final String currency;
+        private final long amountMinorUnits;
+        private final long vatMinorUnits;
+
+        private Voucher(final String currency, final long amountMinorUnits, final long vatMinorUnits) {
+            this.currency = currency;
+            this.amountMinorUnits = amountMinorUnits;
+            this.vatMinorUnits = vatMinorUnits;
+        }
+
+        private String amount() {
+            return BigDecimal.valueOf(amountMinorUnits, 2).toPlainString();
+        }
+
+        private String vat() {
+            return BigDecimal.valueOf(vatMinorUnits, 2).toPlainString();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import com.google.common.collect.ImmutableList;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import com.mirakl.client.mmp.operator.core.MiraklMarketplacePlatformOperatorApiClient;
+import com.mirakl.client.mmp.request.shop.MiraklGetShopsRequest;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MiraklShopBatchLoaderTest {
+
+    @Mock
+    private MiraklMarketplacePlatformOperatorApiClient miraklMarketplacePlatformOperatorApiClientMock;
+
+    @Captor
+    private ArgumentCaptor<MiraklGetShopsRequest> miraklGetShopsRequestCaptor;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldFetchConcurrentLookupsInOneCall() throws Exception {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(shops("shop1", "shop2", "shop3"));
+        final MiraklShopBatchLoader loader = new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 3, TimeUnit.SECONDS.toMillis(10));
+
+        final CompletableFuture<MiraklShop> shop1 = CompletableFuture.supplyAsync(() -> loader.load("shop1"), executor);
+        final CompletableFuture<MiraklShop> shop2 = CompletableFuture.supplyAsync(() -> loader.load("shop2"), executor);
+        final CompletableFuture<MiraklShop> shop3 = CompletableFuture.supplyAsync(() -> loader.load("shop3"), executor);
+
+        Assertions.assertThat(shop1.get(5, TimeUnit.SECONDS).getId()).isEqualTo("shop1");
+        Assertions.assertThat(shop2.get(5, TimeUnit.SECONDS).getId()).isEqualTo("shop2");
+        Assertions.assertThat(shop3.get(5, TimeUnit.SECONDS).getId()).isEqualTo("shop3");
+        verify(miraklMarketplacePlatformOperatorApiClientMock).getShops(miraklGetShopsRequestCaptor.capture());
+        Assertions.assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1", "shop2", "shop3");
+    }
+
+    @Test
+    public void shouldFetchOnceTheWaitIsOver() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(shops("shop1"));
+        final MiraklShopBatchLoader loader = new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 50, 10);
+
+        Assertions.assertThat(loader.load("shop1").getId()).isEqualTo("shop1");
+        Assertions.assertThat(miraklGetShopsRequestCaptor.getValue().getShopIds()).containsOnly("shop1");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailForShopsMiraklDoesNotReturn() {
+        when(miraklMarketplacePlatformOperatorApiClientMock.getShops(miraklGetShopsRequestCaptor.capture())).thenReturn(shops());
+        final MiraklShopBatchLoader loader = new MiraklShopBatchLoader(miraklMarketplacePlatformOperatorApiClientMock, 1, 0);
+
+        loader.load("unknown");
+    }
+
+    private static MiraklShops shops(String... shopIds) {
+        final ImmutableList.Builder<MiraklShop> builder = ImmutableList.builder();
+        for (String shopId : shopIds) {
+            final MiraklShop shop = new MiraklShop();
+            shop.setId(shopId);
+            builder.add(shop);
+        }
+        final MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(builder.build());
+        miraklShops.setTotalCount((long) shopIds.length);
+        return miraklShops;
+    }
+}
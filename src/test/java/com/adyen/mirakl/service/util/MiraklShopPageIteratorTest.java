@@ -0,0 +1,91 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+package com.adyen.mirakl.service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.mirakl.client.mmp.domain.shop.MiraklShop;
+import com.mirakl.client.mmp.domain.shop.MiraklShops;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MiraklShopPageIteratorTest {
+
+    @Test
+    public void shouldRequestPagesUntilTotalCountIsReached() {
+        final List<Integer> requestedOffsets = new ArrayList<>();
+        final MiraklShopPageIterator pages = new MiraklShopPageIterator(offset -> {
+            requestedOffsets.add(offset);
+            return page(5L, shop(), shop());
+        }, MoreExecutors.directExecutor());
+
+        int shops = 0;
+        while (pages.hasNext()) {
+            shops += pages.next().size();
+        }
+
+        assertThat(shops).isEqualTo(6);
+        assertThat(requestedOffsets).containsExactly(0, 2, 4);
+        assertThat(pages.getOffset()).isEqualTo(6);
+    }
+
+    @Test
+    public void shouldStopOnEmptyPage() {
+        final List<Integer> requestedOffsets = new ArrayList<>();
+        final MiraklShopPageIterator pages = new MiraklShopPageIterator(offset -> {
+            requestedOffsets.add(offset);
+            return offset == 0 ? page(10L, shop()) : page(10L);
+        }, MoreExecutors.directExecutor());
+
+        assertThat(pages.next()).hasSize(1);
+        assertThat(pages.next()).isEmpty();
+        assertThat(pages.hasNext()).isFalse();
+        assertThat(requestedOffsets).containsExactly(0, 1);
+    }
+
+    @Test
+    public void shouldPrefetchNextPageWhenCurrentPageIsReturned() {
+        final List<Integer> requestedOffsets = new ArrayList<>();
+        final MiraklShopPageIterator pages = new MiraklShopPageIterator(offset -> {
+            requestedOffsets.add(offset);
+            return page(2L, shop());
+        }, MoreExecutors.directExecutor());
+
+        assertThat(requestedOffsets).containsExactly(0);
+        pages.next();
+        assertThat(requestedOffsets).containsExactly(0, 1);
+    }
+
+    private static MiraklShops page(Long totalCount, MiraklShop... shops) {
+        final MiraklShops miraklShops = new MiraklShops();
+        miraklShops.setShops(ImmutableList.copyOf(shops));
+        miraklShops.setTotalCount(totalCount);
+        return miraklShops;
+    }
+
+    private static MiraklShop shop() {
+        return new MiraklShop();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *                       ######
+ *                       ######
+ * ############    ####( ######  #####. ######  ############   ############
+ * #############  #####( ######  #####. ######  #############  #############
+ *        ######  #####( ######  #####. ######  #####  ######  #####  ######
+ * ###### ######  #####( ######  #####. ######  #####  #####   #####  ######
+ * ###### ######  #####( ######  #####. ######  #####          #####  ######
+ * #############  #############  #############  #############  #####  ######
+ *  ############   ############  #############   ############  #####  ######
+ *                                      ######
+ *                               #############
+ *                               ############
+ *
+ * Adyen Mirakl Connector
+ *
+ * Copyright (c) 2018 Adyen B.V.
+ * This file is open source and available under the MIT license.
+ * See the LICENSE file for more info.
+ *
+ */
+
+
+package com.adyen.mirakl.service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import org.junit.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PhotoIdTypeCodesTest {
+
+    private static final int MAX_UBOS = 4;
+
+    @Test
+    public void shouldClassifyUboTypeCodes() {
+        final PhotoIdTypeCodes photoIdTypeCodes = PhotoIdTypeCodes.of("ubo", MAX_UBOS);
+
+        final PhotoIdTypeCodes.PhotoIdTypeCode front = photoIdTypeCodes.classify("adyen-ubo2-photoid");
+        assertThat(front.getEntityName()).isEqualTo("ubo2");
+        assertThat(front.getEntitySequence()).isEqualTo(2);
+        assertThat(front.isRear()).isFalse();
+
+        final PhotoIdTypeCodes.PhotoIdTypeCode rear = photoIdTypeCodes.classify("ADYEN-UBO4-PHOTOID-REAR");
+        assertThat(rear.getEntityName()).isEqualTo("ubo4");
+        assertThat(rear.getEntitySequence()).isEqualTo(4);
+        assertThat(rear.isRear()).isTrue();
+
+        assertThat(photoIdTypeCodes.classify("adyen-ubo5-photoid")).isNull();
+        assertThat(photoIdTypeCodes.classify("adyen-ubo1-photoidtype")).isNull();
+        assertThat(photoIdTypeCodes.classify("adyen-individual-photoid")).isNull();
+        assertThat(photoIdTypeCodes.classify(null)).isNull();
+    }
+
+    @Test
+    public void shouldClassifyIndividualTypeCodes() {
+        final PhotoIdTypeCodes photoIdTypeCodes = PhotoIdTypeCodes.of("individual");
+
+        final PhotoIdTypeCodes.PhotoIdTypeCode rear = photoIdTypeCodes.classify("adyen-individual-photoid-rear");
+        assertThat(rear.getEntityName()).isEqualTo("individual");
+        assertThat(rear.getEntitySequence()).isNull();
+        assertThat(rear.isRear()).isTrue();
+        assertThat(photoIdTypeCodes.classify("adyen-ubo1-photoid")).isNull();
+    }
+
+    /**
+     * The dispatch table must classify exactly like the former loop over every ubo number
+     */
+    @Test
+    public void shouldMatchTheLoopOverUboNumbers() {
+        final PhotoIdTypeCodes photoIdTypeCodes = PhotoIdTypeCodes.of("ubo", MAX_UBOS);
+        final String[] typeCodes = {"adyen-ubo1-photoid", "adyen-UBO3-photoid-rear", "adyen-ubo5-photoid", "adyen-bankproof", "adyen-individual-photoid", "adyen-ubo2-photoidtype"};
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            final String typeCode = typeCodes[random.nextInt(typeCodes.length)];
+            final List<String> expected = classifyWithLoop(typeCode);
+            final PhotoIdTypeCodes.PhotoIdTypeCode photoIdTypeCode = photoIdTypeCodes.classify(typeCode);
+            final List<String> actual = new ArrayList<>();
+            if (photoIdTypeCode != null) {
+                actual.add(photoIdTypeCode.getEntityName() + (photoIdTypeCode.isRear() ? "_BACK" : "_FRONT"));
+            }
+            assertThat(actual).as(typeCode).isEqualTo(expected);
+        }
+    }
+
+    private static List<String> classifyWithLoop(final String typeCode) {
+        final List<String> matches = new ArrayList<>();
+        for (Integer uboNumber = 1; uboNumber <= MAX_UBOS; uboNumber++) {
+            String entityName = "ubo" + Objects.toString(uboNumber, "");
+            if (typeCode.equalsIgnoreCase("adyen-" + entityName + "-photoid")) {
+                matches.add(entityName + "_FRONT");
+            }
+            if (typeCode.equalsIgnoreCase("adyen-" + entityName + "-photoid-rear")) {
+                matches.add(entityName + "_BACK");
+            }
+        }
+        return matches;
+    }
+}
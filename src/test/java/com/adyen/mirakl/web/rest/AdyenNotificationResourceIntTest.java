@@ -23,15 +23,20 @@
 package com.adyen.mirakl.web.rest;
 
 import java.net.URL;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.security.web.FilterChainProxy;
@@ -40,13 +45,21 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import com.adyen.mirakl.AdyenMiraklConnectorApp;
+import com.adyen.mirakl.config.ApplicationProperties;
 import com.adyen.mirakl.domain.AdyenNotification;
+import com.adyen.mirakl.events.AdyenNotifcationEvent;
 import com.adyen.mirakl.repository.AdyenNotificationRepository;
+import com.adyen.mirakl.service.AdyenNotificationService;
+import com.adyen.mirakl.service.util.AdyenNotificationBatchWriter;
+import com.adyen.mirakl.service.util.NotificationLease;
+import com.adyen.model.marketpay.notification.AccountHolderVerificationNotification;
+import com.adyen.notification.NotificationHandler;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import static com.adyen.mirakl.web.rest.TestUtil.createFormattingConversionService;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -64,6 +77,15 @@ public class AdyenNotificationResourceIntTest {
     @Autowired
     private AdyenNotificationRepository adyenNotificationRepository;
 
+    @Autowired
+    private AdyenNotificationBatchWriter adyenNotificationBatchWriter;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private NotificationHandler notificationHandler;
+
     @Autowired
     private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -75,13 +97,15 @@ public class AdyenNotificationResourceIntTest {
 
     private MockMvc restAdyenNotificationMockMvc;
 
+    private final NotificationLease earlierBoot = new NotificationLease(3600);
+
     @Autowired
     private FilterChainProxy springSecurityFilterChain;
 
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final AdyenNotificationResource adyenNotificationResource = new AdyenNotificationResource(adyenNotificationRepository, publisherMock);
+        final AdyenNotificationResource adyenNotificationResource = new AdyenNotificationResource(new AdyenNotificationService(adyenNotificationBatchWriter, publisherMock, applicationProperties, notificationHandler, earlierBoot));
         this.restAdyenNotificationMockMvc = MockMvcBuilders.standaloneSetup(adyenNotificationResource)
                                                            .addFilter(springSecurityFilterChain)
                                                            .setCustomArgumentResolvers(pageableArgumentResolver)
@@ -111,8 +135,110 @@ public class AdyenNotificationResourceIntTest {
         AdyenNotification testAdyenNotification = adyenNotificationList.get(adyenNotificationList.size() - 1);
         assertThat(testAdyenNotification.getRawAdyenNotification()).isEqualTo(adyenRequestJson);
         assertThat(testAdyenNotification.isProcessed()).isFalse();
+        assertThat(testAdyenNotification.getEventType()).isEqualTo("ACCOUNT_HOLDER_VERIFICATION");
+        assertThat(testAdyenNotification.getAccountHolderCode()).isEqualTo("2146");
+
+        final ArgumentCaptor<ApplicationEvent> eventCaptor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(publisherMock).publishEvent(eventCaptor.capture());
+        final AdyenNotifcationEvent event = (AdyenNotifcationEvent) eventCaptor.getValue();
+        assertThat(event.getDbId()).isEqualTo(testAdyenNotification.getId());
+        assertThat(event.getAdyenNotification().getRawAdyenNotification()).isEqualTo(adyenRequestJson);
+        assertThat(event.getGenericNotification()).isInstanceOf(AccountHolderVerificationNotification.class);
+    }
+
+    @Test
+    @Transactional
+    public void acknowledgeDuplicateAdyenNotificationWithoutProcessingIt() throws Exception {
+        URL url = Resources.getResource("adyenRequests/adyenRequestExample.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8).replace("1215189566695806", UUID.randomUUID().toString());
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes(adyenRequestJson)))
+                                    .andExpect(status().isCreated());
+        int databaseSizeAfterCreate = adyenNotificationRepository.findAll().size();
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes(adyenRequestJson)))
+                                    .andExpect(status().isOk())
+                                    .andExpect(content().string("{\"notificationResponse\":\"[accepted]\"}"));
+
+        assertThat(adyenNotificationRepository.findAll()).hasSize(databaseSizeAfterCreate);
+        verify(publisherMock).publishEvent(any(ApplicationEvent.class));
+    }
+
+    @Test
+    @Transactional
+    public void rejectMalformedAdyenNotification() throws Exception {
+        int databaseSizeBeforeCreate = adyenNotificationRepository.findAll().size();
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes("{\"eventType\": ")))
+                                    .andExpect(status().isBadRequest());
+
+        assertThat(adyenNotificationRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+        verify(publisherMock, never()).publishEvent(any(ApplicationEvent.class));
+    }
+
+    @Test
+    @Transactional
+    public void storeAccountHolderCodeOfStatusChangeNotification() throws Exception {
+        URL url = Resources.getResource("adyenRequests/ACCOUNT_HOLDER_STATUS_CHANGE_ALLOW_PAYOUT.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8);
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes(adyenRequestJson)))
+                                    .andExpect(status().isCreated());
+
+        final ArgumentCaptor<ApplicationEvent> eventCaptor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(publisherMock).publishEvent(eventCaptor.capture());
+        final AdyenNotification stored = adyenNotificationRepository.findOneById(((AdyenNotifcationEvent) eventCaptor.getValue()).getDbId());
+        assertThat(stored.getEventType()).isEqualTo("ACCOUNT_HOLDER_STATUS_CHANGE");
+        assertThat(stored.getAccountHolderCode()).isEqualTo("8278");
+    }
+
+    @Test
+    @Transactional
+    public void rejectAdyenNotificationWithoutEventType() throws Exception {
+        int databaseSizeBeforeCreate = adyenNotificationRepository.findAll().size();
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes("{\"pspReference\": \"8515\"}")))
+                                    .andExpect(status().isBadRequest());
+
+        assertThat(adyenNotificationRepository.findAll()).hasSize(databaseSizeBeforeCreate);
+        verify(publisherMock, never()).publishEvent(any(ApplicationEvent.class));
+    }
+
+    @Test
+    @Transactional
+    public void takeOverNotificationsLeasedBeforeARestart() throws Exception {
+        URL url = Resources.getResource("adyenRequests/adyenRequestExample.json");
+        final String adyenRequestJson = Resources.toString(url, Charsets.UTF_8).replace("1215189566695806", UUID.randomUUID().toString());
+
+        restAdyenNotificationMockMvc.perform(post("/api/adyen-notifications").header("Authorization", "Basic dGVzdDp0ZXN0")
+                                                                             .contentType(TestUtil.APPLICATION_JSON_UTF8)
+                                                                             .content(TestUtil.convertObjectToJsonBytes(adyenRequestJson)))
+                                    .andExpect(status().isCreated());
+        final ArgumentCaptor<ApplicationEvent> eventCaptor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(publisherMock).publishEvent(eventCaptor.capture());
+        final Long id = ((AdyenNotifcationEvent) eventCaptor.getValue()).getDbId();
+        assertThat(adyenNotificationRepository.findOneById(id).getDispatchedBy()).isEqualTo(earlierBoot.getOwner());
+
+        // the connector stopped before handling the notification, it is restarted with a new lease owner
+        final NotificationLease restarted = new NotificationLease(3600);
+        final ZonedDateTime now = ZonedDateTime.now();
+        final ZonedDateTime createdBefore = now.plusMinutes(1);
+        final PageRequest page = new PageRequest(0, 10);
 
-        verify(publisherMock).publishEvent(any());
+        assertThat(adyenNotificationRepository.findUnprocessed(id - 1, 10, createdBefore, now, page)).isEmpty();
+        assertThat(adyenNotificationRepository.findUnprocessedNotLeasedBy(id - 1, 10, createdBefore, now, earlierBoot.getOwner(), page)).isEmpty();
+        assertThat(adyenNotificationRepository.findUnprocessedNotLeasedBy(id - 1, 10, createdBefore, now, restarted.getOwner(), page)).extracting(AdyenNotification::getId)
+                                                                                                                                   .containsExactly(id);
     }
 
     @Test